@@ -0,0 +1,311 @@
+package com.hmdp.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author RenBoQing
+ * @date 2026年10月18日 10:12
+ * @Description CacheClient 相关配置 对应 application.yaml 中的 hmdp.cache
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "hmdp.cache")
+public class CacheClientProperties {
+
+    /**
+     * 进程内一级缓存
+     */
+    private Local local = new Local();
+
+    /**
+     * 互斥锁重建
+     */
+    private Mutex mutex = new Mutex();
+
+    /**
+     * 概率提前刷新
+     */
+    private EarlyRefresh earlyRefresh = new EarlyRefresh();
+
+    /**
+     * 布隆过滤器 防止缓存穿透
+     */
+    private Bloom bloom = new Bloom();
+
+    /**
+     * 缓存值编码
+     */
+    private Codec codec = new Codec();
+
+    /**
+     * 启动预热
+     */
+    private WarmUp warmUp = new WarmUp();
+
+    /**
+     * 缓存失效
+     */
+    private Invalidation invalidation = new Invalidation();
+
+    /**
+     * 热点key探测
+     */
+    private HotKey hotKey = new HotKey();
+
+    /**
+     * 异步重建线程池
+     */
+    private Rebuild rebuild = new Rebuild();
+
+    /**
+     * 大值压缩
+     */
+    private Compression compression = new Compression();
+
+    /**
+     * 店铺类型快照
+     */
+    private ShopType shopType = new ShopType();
+
+    /**
+     * 数据库异常时返回旧数据
+     */
+    private StaleIfError staleIfError = new StaleIfError();
+
+    /**
+     * 带代数的key命名空间
+     */
+    private Namespace namespace = new Namespace();
+
+    @Data
+    public static class Local {
+        /**
+         * 是否开启一级缓存
+         */
+        private boolean enabled = false;
+        /**
+         * 最大条目数 超出后按LRU淘汰
+         */
+        private int maximumSize = 10000;
+        /**
+         * 写入后的存活时间
+         */
+        private Duration expireAfterWrite = Duration.ofSeconds(60);
+    }
+
+    @Data
+    public static class Mutex {
+        /**
+         * 等待其他节点重建的最长时间 超过后直接查询数据库
+         */
+        private Duration waitTimeout = Duration.ofSeconds(1);
+    }
+
+    @Data
+    public static class EarlyRefresh {
+        /**
+         * 提前刷新的激进程度 大于1更早刷新 小于1更晚刷新
+         */
+        private double beta = 1.0;
+    }
+
+    @Data
+    public static class Bloom {
+        /**
+         * 是否开启布隆过滤器
+         */
+        private boolean enabled = false;
+        /**
+         * 每个过滤器预计的元素个数
+         */
+        private long expectedInsertions = 1000000;
+        /**
+         * 期望误判率
+         */
+        private double fpp = 0.01;
+        /**
+         * 定时全量重建的间隔
+         */
+        private Duration rebuildInterval = Duration.ofHours(1);
+        /**
+         * 检查是否漏收新增广播的间隔 连续两次发现漏收时重建
+         */
+        private Duration checkInterval = Duration.ofSeconds(5);
+    }
+
+    @Data
+    public static class Codec {
+        /**
+         * 未配置前缀时使用的编码
+         */
+        private String defaultCodec = "json";
+        /**
+         * key前缀到编码名称的映射 最长前缀优先
+         */
+        private Map<String, String> prefixes = new HashMap<>();
+    }
+
+    @Data
+    public static class WarmUp {
+        /**
+         * 启动时是否预热
+         */
+        private boolean enabled = false;
+        /**
+         * 是否写入逻辑过期数据 供queryWithLogicalExpire使用 写入cache:shop:logical: 否则按ttl写入cache:shop:
+         */
+        private boolean logicalExpire = false;
+        /**
+         * 每页读取的店铺数 也是每次pipeline写入的条数
+         */
+        private int pageSize = 500;
+        /**
+         * 并发写入redis的线程数
+         */
+        private int concurrency = 4;
+        /**
+         * 热点店铺数量(按销量) 加载完成后实例才就绪
+         */
+        private int hotSetSize = 1000;
+    }
+
+    @Data
+    public static class Invalidation {
+        /**
+         * 合并删除的时间窗口
+         */
+        private Duration window = Duration.ofMillis(10);
+        /**
+         * 延迟双删的间隔 为0时不做第二次删除
+         */
+        private Duration doubleDeleteDelay = Duration.ZERO;
+    }
+
+    @Data
+    public static class HotKey {
+        /**
+         * 是否开启热点key探测
+         */
+        private boolean enabled = false;
+        /**
+         * 统计窗口 每个窗口结束时热度减半
+         */
+        private Duration window = Duration.ofSeconds(1);
+        /**
+         * 采样率 (0,1]
+         */
+        private double sampleRate = 1.0;
+        /**
+         * 衰减后的热度达到该值即为热点 稳定访问时约为每个窗口访问量的2倍
+         */
+        private long threshold = 1000;
+        /**
+         * 热点key的最大数量
+         */
+        private int maxHotKeys = 100;
+        /**
+         * 热点key的值在进程内固定的时长
+         */
+        private Duration pinTtl = Duration.ofSeconds(5);
+        /**
+         * 计数草图的行数
+         */
+        private int depth = 4;
+        /**
+         * 计数草图每行的计数器个数
+         */
+        private int width = 4096;
+    }
+
+    @Data
+    public static class Rebuild {
+        /**
+         * 重建线程数
+         */
+        private int poolSize = 10;
+        /**
+         * 排队的最大任务数 超出后丢弃
+         */
+        private int queueCapacity = 1000;
+        /**
+         * 关闭时等待已提交任务完成的最长时间
+         */
+        private Duration shutdownTimeout = Duration.ofSeconds(10);
+    }
+
+    @Data
+    public static class Compression {
+        /**
+         * 是否压缩
+         */
+        private boolean enabled = false;
+        /**
+         * 编码后达到该字节数才压缩
+         */
+        private int threshold = 1024;
+    }
+
+    @Data
+    public static class ShopType {
+        /**
+         * 定时检查redis中版本号的间隔 正常由pub/sub通知 定时检查用于兜底
+         */
+        private Duration versionCheckInterval = Duration.ofSeconds(30);
+    }
+
+    @Data
+    public static class StaleIfError {
+        /**
+         * 查询数据库的线程数
+         */
+        private int poolSize = 20;
+        /**
+         * 排队的最大查询数 超出按失败处理
+         */
+        private int queueCapacity = 100;
+        /**
+         * key前缀到策略的映射 未配置的前缀不做保护
+         */
+        private Map<String, StalePolicy> prefixes = new HashMap<>();
+    }
+
+    @Data
+    public static class StalePolicy {
+        /**
+         * 查询数据库的超时时间
+         */
+        private Duration dbTimeout = Duration.ofMillis(500);
+        /**
+         * 旧副本的保留时间
+         */
+        private Duration staleTtl = Duration.ofHours(24);
+        /**
+         * 连续失败多少次后熔断
+         */
+        private int failureThreshold = 5;
+        /**
+         * 熔断持续时间 之后放行一个试探请求
+         */
+        private Duration openDuration = Duration.ofSeconds(10);
+    }
+
+    @Data
+    public static class Namespace {
+        /**
+         * 开启命名空间的key前缀 key中带上代数 提升代数即可整体失效
+         */
+        private List<String> prefixes = new ArrayList<>();
+        /**
+         * 本地缓存代数的时长 正常由广播通知变化 超时后从redis重新读取兜底
+         */
+        private Duration refreshInterval = Duration.ofSeconds(5);
+    }
+}
@@ -0,0 +1,43 @@
+package com.hmdp.config;
+
+import com.hmdp.utils.CacheClient;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * @author RenBoQing
+ * @date 2026年10月18日 20:10
+ * @Description 查看各命名空间的代数 提升代数使该前缀下的缓存整体失效 用于批量修改数据之后
+ * 只通过JMX暴露(org.springframework.boot:type=Endpoint,name=Cachenamespace) 项目没有鉴权 不对web开放
+ */
+@Component
+@Endpoint(id = "cachenamespace")
+public class CacheNamespaceEndpoint {
+    @Resource
+    private CacheClient cacheClient;
+    @Resource
+    private CacheClientProperties cacheClientProperties;
+
+    @ReadOperation
+    public Map<String, Long> generations() {
+        Map<String, Long> generations = new LinkedHashMap<>();
+        cacheClientProperties.getNamespace().getPrefixes()
+                .forEach(prefix -> generations.put(prefix, cacheClient.generation(prefix)));
+        return generations;
+    }
+
+    @WriteOperation
+    public Map<String, Long> bump(String prefix) {
+        if (!cacheClientProperties.getNamespace().getPrefixes().contains(prefix)) {
+            throw new IllegalArgumentException("未开启命名空间的前缀: " + prefix);
+        }
+        cacheClient.bumpNamespace(prefix);
+        return generations();
+    }
+}
@@ -0,0 +1,36 @@
+package com.hmdp.config;
+
+import com.hmdp.utils.ShopCacheWarmer;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.Map;
+
+/**
+ * @author RenBoQing
+ * @date 2026年10月18日 15:30
+ * @Description 查看预热进度 手动触发预热
+ * 只通过JMX暴露(org.springframework.boot:type=Endpoint,name=Cachewarmup) 项目没有鉴权 不对web开放
+ */
+@Component
+@Endpoint(id = "cachewarmup")
+public class CacheWarmUpEndpoint {
+    @Resource
+    private ShopCacheWarmer shopCacheWarmer;
+
+    @ReadOperation
+    public Map<String, Object> progress() {
+        return shopCacheWarmer.progress();
+    }
+
+    @WriteOperation
+    public Map<String, Object> warmUp() {
+        boolean started = shopCacheWarmer.start();
+        Map<String, Object> progress = shopCacheWarmer.progress();
+        progress.put("started", started);
+        return progress;
+    }
+}
@@ -1,7 +1,14 @@
 package com.hmdp.config;
 
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.CacheMetrics;
+import com.hmdp.utils.ETagInterceptor;
+import com.hmdp.utils.HotKeyDetector;
 import com.hmdp.utils.LoginInterceptor;
+import com.hmdp.utils.RateLimitInterceptor;
 import com.hmdp.utils.RefreshTokenInterceptor;
+import com.hmdp.utils.ResponseCacheInterceptor;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.core.StringRedisTemplate;
@@ -19,6 +26,16 @@ import javax.annotation.Resource;
 public class MvcConfig implements WebMvcConfigurer {
     @Resource
     private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private RedisTemplate<String, byte[]> byteRedisTemplate;
+    @Resource
+    private CacheMetrics cacheMetrics;
+    @Resource
+    private HotKeyDetector hotKeyDetector;
+    @Resource
+    private CacheClient cacheClient;
+    @Resource
+    private MeterRegistry meterRegistry;
 
     @Override
     public void addInterceptors(InterceptorRegistry registry) {
@@ -31,5 +48,9 @@ public class MvcConfig implements WebMvcConfigurer {
                         "/voucher/**",
                         "/shop-type/**").order(1);
         registry.addInterceptor(new RefreshTokenInterceptor(stringRedisTemplate)).addPathPatterns("/**").order(0);
+        //限流在登录校验之后 按用户限流时可以取到用户
+        registry.addInterceptor(new RateLimitInterceptor(stringRedisTemplate, meterRegistry)).addPathPatterns("/**").order(1);
+        registry.addInterceptor(new ETagInterceptor(cacheClient)).addPathPatterns("/**").order(2);
+        registry.addInterceptor(new ResponseCacheInterceptor(byteRedisTemplate, cacheMetrics, hotKeyDetector, cacheClient)).addPathPatterns("/**").order(3);
     }
 }
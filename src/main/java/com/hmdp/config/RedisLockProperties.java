@@ -0,0 +1,22 @@
+package com.hmdp.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * @author RenBoQing
+ * @date 2026年10月18日 17:10
+ * @Description 分布式锁配置 对应 application.yaml 中的 hmdp.lock
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "hmdp.lock")
+public class RedisLockProperties {
+    /**
+     * 锁的租期 持有期间看门狗每隔租期的1/3续期一次 持有者宕机后最多经过一个租期自动释放
+     */
+    private Duration leaseTime = Duration.ofSeconds(10);
+}
@@ -0,0 +1,62 @@
+package com.hmdp.config;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hmdp.dto.Result;
+import com.hmdp.utils.CachedResponse;
+import com.hmdp.utils.ResponseCacheInterceptor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.MethodParameter;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+
+import javax.annotation.Resource;
+
+/**
+ * @author RenBoQing
+ * @date 2026年10月18日 18:40
+ * @Description 带 @CachedResponse 的接口未命中时 把成功的Result序列化后写入响应缓存
+ */
+@Slf4j
+@RestControllerAdvice
+public class ResponseCacheAdvice implements ResponseBodyAdvice<Object> {
+    @Resource
+    private RedisTemplate<String, byte[]> byteRedisTemplate;
+    @Resource
+    private ObjectMapper objectMapper;
+
+    @Override
+    public boolean supports(MethodParameter returnType, Class<? extends HttpMessageConverter<?>> converterType) {
+        return returnType.hasMethodAnnotation(CachedResponse.class);
+    }
+
+    @Override
+    public Object beforeBodyWrite(Object body, MethodParameter returnType, MediaType selectedContentType,
+                                  Class<? extends HttpMessageConverter<?>> selectedConverterType,
+                                  ServerHttpRequest request, ServerHttpResponse response) {
+        if (!(request instanceof ServletServerHttpRequest) || !(body instanceof Result)
+                || !Boolean.TRUE.equals(((Result) body).getSuccess())) {
+            return body;
+        }
+        Object key = ((ServletServerHttpRequest) request).getServletRequest()
+                .getAttribute(ResponseCacheInterceptor.RESPONSE_KEY_ATTRIBUTE);
+        if (key == null) {
+            return body;
+        }
+        CachedResponse cachedResponse = returnType.getMethodAnnotation(CachedResponse.class);
+        try {
+            byteRedisTemplate.opsForValue().set((String) key, objectMapper.writeValueAsBytes(body),
+                    cachedResponse.ttl(), cachedResponse.unit());
+        } catch (JsonProcessingException | RuntimeException e) {
+            //写入失败不影响本次响应
+            log.warn("写入响应缓存失败 key={}", key, e);
+        }
+        return body;
+    }
+}
@@ -0,0 +1,91 @@
+package com.hmdp.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * @author RenBoQing
+ * @date 2026年10月18日 21:40
+ * @Description 秒杀相关配置 对应 application.yaml 中的 hmdp.seckill
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "hmdp.seckill")
+public class SeckillProperties {
+
+    /**
+     * 库存分片
+     */
+    private Stock stock = new Stock();
+
+    /**
+     * 秒杀预热
+     */
+    private Preheat preheat = new Preheat();
+
+    /**
+     * 订单异步写库
+     */
+    private Order order = new Order();
+
+    @Data
+    public static class Order {
+        /**
+         * 每个节点上每个分片stream的消费者线程数 阻塞读取时各占用一个redis连接
+         * 这些连接来自消费者单独的连接池 大小为 分片数×consumers 不计入spring.redis.lettuce.pool.max-active
+         */
+        private int consumers = 1;
+        /**
+         * 一次读取并批量写入的最大订单数
+         */
+        private int batchSize = 100;
+        /**
+         * 没有新订单时阻塞等待的时长 需小于redis命令超时
+         */
+        private Duration blockTimeout = Duration.ofSeconds(2);
+        /**
+         * 已投递未确认超过该时长的订单 由其他消费者认领重新处理
+         */
+        private Duration claimIdle = Duration.ofSeconds(30);
+        /**
+         * 检查未确认订单的间隔
+         */
+        private Duration recoveryInterval = Duration.ofSeconds(10);
+        /**
+         * 最多投递次数 超过后放弃该订单并归还库存
+         */
+        private int maxDeliveries = 5;
+    }
+
+    @Data
+    public static class Stock {
+        /**
+         * 每个优惠券的库存拆分为几个分片 各分片及其订单stream位于不同的slot
+         * 进行中的秒杀按加载时的分片数存放 修改前需等待秒杀结束
+         */
+        private int shards = 4;
+        /**
+         * 本地售罄标记的有效期 到期后再次访问redis确认 防止错过补货广播
+         */
+        private Duration soldOutTtl = Duration.ofMinutes(1);
+        /**
+         * 未预热的优惠券首次下单时只由一个请求加载库存 其他请求等待加载完成的最长时间
+         */
+        private Duration loadWaitTimeout = Duration.ofSeconds(1);
+    }
+
+    @Data
+    public static class Preheat {
+        /**
+         * 开始前多久把库存和秒杀时间加载到redis和本地
+         */
+        private Duration leadTime = Duration.ofMinutes(5);
+        /**
+         * 检查待预热优惠券的间隔
+         */
+        private Duration scanInterval = Duration.ofSeconds(10);
+    }
+}
@@ -0,0 +1,41 @@
+package com.hmdp.config;
+
+import com.hmdp.dto.ShopTypeSnapshot;
+import com.hmdp.service.IShopTypeService;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * @author RenBoQing
+ * @date 2026年10月18日 23:59
+ * @Description 查看本节点店铺类型快照的版本 直接修改tb_shop_type之后提升版本 各节点从数据库重新加载
+ * 只通过JMX暴露(org.springframework.boot:type=Endpoint,name=Shoptypecache) 项目没有鉴权 不对web开放
+ */
+@Component
+@Endpoint(id = "shoptypecache")
+public class ShopTypeCacheEndpoint {
+    @Resource
+    private IShopTypeService shopTypeService;
+
+    @ReadOperation
+    public Map<String, Object> snapshot() {
+        ShopTypeSnapshot snapshot = shopTypeService.snapshot();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("version", snapshot.getVersion());
+        result.put("types", snapshot.getTypes().size());
+        result.put("etag", snapshot.getEtag());
+        return result;
+    }
+
+    @WriteOperation
+    public Map<String, Object> refresh() {
+        shopTypeService.refreshTypeList();
+        return snapshot();
+    }
+}
@@ -8,12 +8,14 @@ import com.hmdp.entity.User;
 import com.hmdp.entity.UserInfo;
 import com.hmdp.service.IUserInfoService;
 import com.hmdp.service.IUserService;
+import com.hmdp.utils.RateLimit;
 import com.hmdp.utils.UserHolder;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.web.bind.annotation.*;
 
 import javax.annotation.Resource;
 import javax.servlet.http.HttpSession;
+import java.util.concurrent.TimeUnit;
 
 /**
  * <p>
@@ -38,6 +40,8 @@ public class UserController {
      * 发送手机验证码
      */
     @PostMapping("code")
+    @RateLimit(name = "code-phone", key = RateLimit.LimitKey.PARAM, variable = "phone", permits = 1, period = 60)
+    @RateLimit(name = "code-ip", key = RateLimit.LimitKey.IP, permits = 20, period = 1, unit = TimeUnit.HOURS, burst = 5)
     public Result sendCode(@RequestParam("phone") String phone, HttpSession session) {
         // TODO 发送短信验证码并保存验证码
         return userService.sendCode(phone,session);
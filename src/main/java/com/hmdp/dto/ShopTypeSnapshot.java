@@ -0,0 +1,31 @@
+package com.hmdp.dto;
+
+import com.hmdp.entity.ShopType;
+import lombok.Getter;
+import org.springframework.util.DigestUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * @author RenBoQing
+ * @date 2026年10月18日 18:02
+ * @Description 店铺类型的不可变快照 body为预先序列化好的响应体
+ */
+@Getter
+public final class ShopTypeSnapshot {
+    //对应redis中的版本号
+    private final long version;
+    private final List<ShopType> types;
+    private final byte[] body;
+    //响应体的摘要 用作ETag
+    private final String etag;
+
+    public ShopTypeSnapshot(long version, List<ShopType> types, byte[] body) {
+        this.version = version;
+        this.types = Collections.unmodifiableList(new ArrayList<>(types));
+        this.body = body;
+        this.etag = DigestUtils.md5DigestAsHex(body);
+    }
+}
@@ -16,5 +16,11 @@ public interface IShopService extends IService<Shop> {
 
     Result queryById(Long id) throws InterruptedException;
 
+    Result saveShop(Shop shop);
+
     Result update(Shop shop);
+
+    Result queryShopByType(Integer typeId, Integer current);
+
+    Result queryShopByName(String name, Integer current);
 }
@@ -1,6 +1,7 @@
 package com.hmdp.service;
 
 import com.hmdp.dto.Result;
+import com.hmdp.dto.ShopTypeSnapshot;
 import com.hmdp.entity.ShopType;
 import com.baomidou.mybatisplus.extension.service.IService;
 
@@ -15,4 +16,9 @@ import com.baomidou.mybatisplus.extension.service.IService;
 public interface IShopTypeService extends IService<ShopType> {
 
     Result queryTypeList();
+
+    ShopTypeSnapshot snapshot();
+
+    //修改tb_shop_type之后调用 在事务中调用时提交后才生效 直接修改数据库时通过ShopTypeCacheEndpoint调用
+    void refreshTypeList();
 }
@@ -1,31 +1,40 @@
 package com.hmdp.service.impl;
 
-import cn.hutool.core.util.BooleanUtil;
 import cn.hutool.core.util.StrUtil;
-import cn.hutool.json.JSONObject;
-import cn.hutool.json.JSONUtil;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.Shop;
 import com.hmdp.mapper.ShopMapper;
 import com.hmdp.service.IShopService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.CacheInvalidator;
 import com.hmdp.utils.RedisConstants;
-import com.hmdp.utils.RedisData;
 import org.springframework.boot.autoconfigure.cache.CacheProperties;
-import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.DigestUtils;
 
+import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
 
-import java.time.LocalDateTime;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.Executor;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 import static com.hmdp.utils.RedisConstants.*;
+import static com.hmdp.utils.SystemConstants.BLOOM_REBUILD_PAGE_SIZE;
+import static com.hmdp.utils.SystemConstants.DEFAULT_PAGE_SIZE;
+import static com.hmdp.utils.SystemConstants.MAX_PAGE_SIZE;
 
 /**
  * <p>
@@ -39,25 +48,36 @@ import static com.hmdp.utils.RedisConstants.*;
 public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IShopService {
 
     @Resource
-    private StringRedisTemplate stringRedisTemplate;
+
+    private CacheClient cacheClient;
 
     @Resource
+    private CacheInvalidator cacheInvalidator;
 
-    private CacheClient cacheClient;
+    /*
+     *启动时用全部店铺id构建布隆过滤器 之后由CacheClient定时重建
+     * @author RenBoQing
+     */
+    @PostConstruct
+    public void initBloomFilter() {
+        cacheClient.registerBloomFilter(CACHE_SHOP_KEY, (Long lastId) -> listObjs(new QueryWrapper<Shop>()
+                        .select("id")
+                        .gt(lastId != null, "id", lastId)
+                        .orderByAsc("id")
+                        .last("limit " + BLOOM_REBUILD_PAGE_SIZE),
+                o -> Long.valueOf(o.toString())));
+    }
 
     @Override
     public Result queryById(Long id) throws InterruptedException {
         //id2->getById(id2)  简写---》this：getById
-        Shop shop = cacheClient.queryWithPassThrough(CACHE_SHOP_KEY, id, Shop.class, this::getById, CACHE_SHOP_TTL, TimeUnit.MINUTES);
+        Shop shop = cacheClient.queryWithMutex(CACHE_SHOP_KEY, id, Shop.class, this::getById, CACHE_SHOP_TTL, TimeUnit.MINUTES);
         if (shop == null) {
             return Result.fail("店铺不存在");
         }
         return Result.ok(shop);
     }
 
-    //缓存线程次
-    private static final ExecutorService CASHCASH_REBUILD_EXCUTOR = Executors.newFixedThreadPool(10);
-
     /*
      *逻辑过期的缓存击穿
      * @author RenBoQing
@@ -66,47 +86,17 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
      * @return com.hmdp.entity.Shop
      */
     public Shop queryWithLogicalExpire(Long id) {
-        String key = CACHE_SHOP_KEY + id;
-        //从redis查询缓存
-        String shopJson = stringRedisTemplate.opsForValue().get(key);
-        //判断是否存在
-        if (StrUtil.isBlank(shopJson)) {
-            //不存在 返回
-            return null;
-        }
-        //4.命中  将json反序列化
-        RedisData redisData = JSONUtil.toBean(shopJson, RedisData.class);
-        JSONObject data = (JSONObject) redisData.getData();
-        Shop shop = JSONUtil.toBean(data, Shop.class);
-        LocalDateTime expireTime = redisData.getExpireTime();
-        //5. 判断是否过期
-        if (expireTime.isAfter(LocalDateTime.now())) {
-            //5.2 返回数据
-            return shop;
-        }
-        //5.1 过期 缓存重建
-        //6缓存重建
-        //6.1获取互斥锁
-        String lockKey = LOCK_SHOP_KEY + id;
-        boolean isLock = tryLock(lockKey);
-        //6.2 判断互斥锁是否成功
-        if (isLock) {
-            //6.3成功 开启独立线程 实现缓存重建
-            CASHCASH_REBUILD_EXCUTOR.submit(() -> {
-                try {
-                    this.saveShop2Redis(id, 20L);
-                } catch (Exception e) {
-                    throw new RuntimeException(e);
-                } finally {
-                    //   释放锁
-                    unLock(lockKey);
-                }
-
-            });
-        }
-        //6.4返回过期的数据
+        return cacheClient.queryWithLogicalExpire(CACHE_SHOP_KEY, id, Shop.class, this::getById, 20L, TimeUnit.SECONDS);
+    }
 
-        return shop;
+    /*
+     *概率提前刷新 临近过期时按重建耗时随机选中请求提前重建
+     * 数据存放在cache:shop:early:下 与queryById等方式的缓存互不影响
+     * @param id
+     * @return com.hmdp.entity.Shop
+     */
+    public Shop queryWithEarlyRefresh(Long id) {
+        return cacheClient.queryWithEarlyRefresh(CACHE_SHOP_KEY, id, Shop.class, this::getById, CACHE_SHOP_TTL, TimeUnit.MINUTES);
     }
 
     /*
@@ -117,29 +107,7 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
      * @return com.hmdp.entity.Shop
      */
     public Shop queryWithPassThrough(Long id) {
-        String key = CACHE_SHOP_KEY + id;
-        //从redis查询缓存
-        String shopJson = stringRedisTemplate.opsForValue().get(key);
-        //判断是否存在
-        if (StrUtil.isNotBlank(shopJson)) {
-            //存在 返回
-            Shop shop = JSONUtil.toBean(shopJson, Shop.class);
-            return shop;
-        }
-        //判断命中的是否为空值
-        if (shopJson != null) {
-            return null;
-        }
-        //不存在 查询数据库
-        Shop shop = getById(id);
-        if (shop == null) {
-            //不存在 将数据写入redis
-            stringRedisTemplate.opsForValue().set(key, "", CACHE_NULL_TTL, TimeUnit.MINUTES);
-            return null;
-        }
-        //存在 写入redis 返回前端
-        stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(shop), CACHE_SHOP_TTL, TimeUnit.MINUTES);
-        return shop;
+        return cacheClient.queryWithPassThrough(CACHE_SHOP_KEY, id, Shop.class, this::getById, CACHE_SHOP_TTL, TimeUnit.MINUTES);
     }
 
     /*
@@ -149,55 +117,9 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
      * @param id
      * @return com.hmdp.entity.Shop
      */
-    public Shop queryWithMutex(Long id) throws InterruptedException {
-        String key = CACHE_SHOP_KEY + id;
-        //从redis查询缓存
-        String shopJson = stringRedisTemplate.opsForValue().get(key);
-        //判断是否存在
-        if (StrUtil.isNotBlank(shopJson)) {
-            //存在 返回
-            Shop shop = JSONUtil.toBean(shopJson, Shop.class);
-            return shop;
-        }
-        //判断命中的是否为空值
-        if (shopJson != null) {
-            return null;
-        }
-        //实现缓存重建  使用互斥锁
-        //1.获取互斥锁
-        boolean isLock = tryLock(LOCK_SHOP_KEY + id);
-
-        if (!isLock) {
-            //失败 休眠
-            Thread.sleep(50);
-            //再次查询
-            return queryWithMutex(id);
-        }
-        //成功    根据id查询数据库
-
-        Shop shop = getById(id);
-        if (shop == null) {
-            //不存在 将数据写入redis
-            stringRedisTemplate.opsForValue().set(key, "", CACHE_NULL_TTL, TimeUnit.MINUTES);
-            return null;
-        }
-        //存在 写入redis 返回前端
-        stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(shop), CACHE_SHOP_TTL, TimeUnit.MINUTES);
-        //释放互斥锁
-        unLock(LOCK_SHOP_KEY + id);
-        //返回
-        return shop;
-    }
-
-    //互斥锁
-    private boolean tryLock(String key) {
-        Boolean flag = stringRedisTemplate.opsForValue().setIfAbsent(key, "1", 10, TimeUnit.MINUTES);
-        return BooleanUtil.isTrue(flag);
-    }
-
-    //互斥锁
-    private void unLock(String key) {
-        stringRedisTemplate.delete(key);
+    public Shop queryWithMutex(Long id) {
+        //并发未命中合并为一次数据库查询 等待方由缓存写入通知唤醒
+        return cacheClient.queryWithMutex(CACHE_SHOP_KEY, id, Shop.class, this::getById, CACHE_SHOP_TTL, TimeUnit.MINUTES);
     }
 
     /*
@@ -210,12 +132,23 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
     public void saveShop2Redis(Long id, Long expireSeconds) {
         //查询数据
         Shop shop = getById(id);
-        // 设置逻辑过期时间
-        RedisData redisData = new RedisData();
-        redisData.setData(shop);
-        redisData.setExpireTime(LocalDateTime.now().plusSeconds(expireSeconds));
-        //存入redis
-        stringRedisTemplate.opsForValue().set(CACHE_SHOP_KEY + id, JSONUtil.toJsonStr(redisData));
+        //设置逻辑过期时间 存入redis
+        cacheClient.setWithLogicalExpire(CACHE_SHOP_KEY + CACHE_LOGICAL_EXPIRE_SEGMENT + id, shop, expireSeconds, TimeUnit.SECONDS);
+    }
+
+    /*
+     *新增店铺 同时加入布隆过滤器
+     * @param shop
+     * @return com.hmdp.dto.Result
+     */
+    @Override
+    public Result saveShop(Shop shop) {
+        save(shop);
+        cacheClient.addToBloomFilter(CACHE_SHOP_KEY, shop.getId());
+        //清理之前查询该id时写入的空值
+        invalidateShop(shop.getId());
+        invalidatePages();
+        return Result.ok(shop.getId());
     }
 
     /*
@@ -235,8 +168,81 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
         }
         //更新数据库
         updateById(shop);
-        //删除缓存
-        stringRedisTemplate.delete(CACHE_SHOP_KEY + id);
+        //事务提交后删除缓存 同时通知各节点清理本地缓存
+        invalidateShop(id);
+        invalidatePages();
         return Result.ok();
     }
+
+    /*
+     *按类型分页查询
+     * 每页缓存店铺id列表 店铺数据从店铺缓存批量读取
+     * @param typeId
+     * @param current
+     * @return com.hmdp.dto.Result
+     */
+    @Override
+    public Result queryShopByType(Integer typeId, Integer current) {
+        String key = CACHE_SHOP_TYPE_PAGE_KEY + typeId + "-" + current;
+        List<Long> ids = queryPageIds(key, () -> query()
+                .select("id")
+                .eq("type_id", typeId)
+                .orderByAsc("id")
+                .page(new Page<>(current, DEFAULT_PAGE_SIZE, false)));
+        return Result.ok(hydrate(ids));
+    }
+
+    /*
+     *按名称关键字分页查询
+     * 关键字去掉首尾空白并转小写后作为缓存key 取摘要避免key过长
+     * @param name
+     * @param current
+     * @return com.hmdp.dto.Result
+     */
+    @Override
+    public Result queryShopByName(String name, Integer current) {
+        String keyword = StrUtil.isBlank(name) ? "" : name.trim().toLowerCase();
+        String digest = DigestUtils.md5DigestAsHex(keyword.getBytes(StandardCharsets.UTF_8));
+        String key = CACHE_SHOP_NAME_PAGE_KEY + digest + "-" + current;
+        List<Long> ids = queryPageIds(key, () -> query()
+                .select("id")
+                .like(StrUtil.isNotBlank(keyword), "name", keyword)
+                .orderByAsc("id")
+                .page(new Page<>(current, MAX_PAGE_SIZE, false)));
+        return Result.ok(hydrate(ids));
+    }
+
+    //读取一页的id列表 未命中时只查id并写入缓存 空页同样缓存
+    private List<Long> queryPageIds(String key, Supplier<Page<Shop>> dbFallBack) {
+        List<Long> ids = cacheClient.getList(key, Long.class);
+        if (ids != null) {
+            return ids;
+        }
+        ids = dbFallBack.get().getRecords().stream().map(Shop::getId).collect(Collectors.toList());
+        cacheClient.set(key, ids, CACHE_SHOP_PAGE_TTL, TimeUnit.MINUTES);
+        return ids;
+    }
+
+    //通过店铺缓存批量取出店铺 保持id列表的顺序
+    private List<Shop> hydrate(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Map<Long, Shop> shops = cacheClient.queryBatchWithPassThrough(CACHE_SHOP_KEY, ids, Shop.class,
+                missIds -> listByIds(missIds).stream().collect(Collectors.toMap(Shop::getId, Function.identity())),
+                CACHE_SHOP_TTL, TimeUnit.MINUTES);
+        return ids.stream().map(shops::get).filter(Objects::nonNull).collect(Collectors.toList());
+    }
+
+    //店铺的新增和修改可能改变任意一页的内容 提升代数使全部分页缓存失效
+    //同时删除逻辑过期和概率提前刷新方式的缓存
+    private void invalidateShop(Long id) {
+        cacheInvalidator.invalidate(Arrays.asList(CACHE_SHOP_KEY + id,
+                CACHE_SHOP_KEY + CACHE_LOGICAL_EXPIRE_SEGMENT + id, CACHE_SHOP_KEY + CACHE_EARLY_REFRESH_SEGMENT + id));
+    }
+
+    private void invalidatePages() {
+        cacheInvalidator.invalidateNamespace(CACHE_SHOP_TYPE_PAGE_KEY);
+        cacheInvalidator.invalidateNamespace(CACHE_SHOP_NAME_PAGE_KEY);
+    }
 }
@@ -1,49 +1,175 @@
 package com.hmdp.service.impl;
 
-import cn.hutool.core.util.StrUtil;
-import cn.hutool.json.JSONUtil;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hmdp.config.CacheClientProperties;
 import com.hmdp.dto.Result;
-import com.hmdp.entity.Shop;
+import com.hmdp.dto.ShopTypeSnapshot;
 import com.hmdp.entity.ShopType;
 import com.hmdp.mapper.ShopTypeMapper;
 import com.hmdp.service.IShopTypeService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.utils.CacheClient;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.stereotype.Service;
-import javax.annotation.Resource;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
 import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static com.hmdp.utils.RedisConstants.CACHE_SHOP_LIST_KEY;
+import static com.hmdp.utils.RedisConstants.CACHE_SHOP_LIST_TTL;
+import static com.hmdp.utils.RedisConstants.CACHE_SHOP_TYPE_CHANNEL;
+import static com.hmdp.utils.RedisConstants.CACHE_SHOP_TYPE_VERSION_KEY;
 
 /**
  * <p>
  *  服务实现类
  * </p>
+ * 店铺类型保存为进程内的不可变快照 首页请求直接返回预先序列化的响应体 不访问redis
+ * redis中的版本号变化时(收到通知或定时检查)整体替换快照
+ * redis中的列表按版本号存放 cache:shoplist:版本号 旧版本的列表不会被当作新版本读取 由ttl过期
  *
  * @author 虎哥
  * @since 2021-12-22
  */
+@Slf4j
 @Service
 public class ShopTypeServiceImpl extends ServiceImpl<ShopTypeMapper, ShopType> implements IShopTypeService {
     @Resource
-    StringRedisTemplate stringRedisTemplate;
+    private CacheClient cacheClient;
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+    @Resource
+    private CacheClientProperties cacheClientProperties;
+    @Resource
+    private ObjectMapper objectMapper;
+
+    //当前快照 未加载时为null
+    private final AtomicReference<ShopTypeSnapshot> snapshot = new AtomicReference<>();
+
+    //同一时间只有一个线程加载
+    private final Object loadLock = new Object();
+
+    private ScheduledExecutorService versionChecker;
+
+    @PostConstruct
+    public void init() {
+        versionChecker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "shop-type-version-checker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        //其他节点修改了店铺类型 立即检查版本
+        redisMessageListenerContainer.addMessageListener((message, pattern) ->
+                versionChecker.execute(this::checkVersion), new ChannelTopic(CACHE_SHOP_TYPE_CHANNEL));
+        //错过通知时 定时检查兜底
+        long interval = cacheClientProperties.getShopType().getVersionCheckInterval().toMillis();
+        versionChecker.scheduleWithFixedDelay(this::checkVersion, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        versionChecker.shutdownNow();
+    }
+
     @Override
     public Result queryTypeList() {
-        String shopJsonType = stringRedisTemplate.opsForValue().get(CACHE_SHOP_LIST_KEY);
-        //判断是否存在
-        if(StrUtil.isNotBlank(shopJsonType)){
-            List<ShopType> shopTypes = JSONUtil.toList(shopJsonType, ShopType.class);
-            return Result.ok(shopTypes);
-        }
-        //不存在 查询数据库
-        List<ShopType> list = list();
-        if (list.size()<=0) {
-            //不存在 返回错误
+        List<ShopType> types = snapshot().getTypes();
+        if (types.isEmpty()) {
             return Result.fail("暂无分类");
         }
-        //存在 写入redis 返回前端
-        stringRedisTemplate.opsForValue().set(CACHE_SHOP_LIST_KEY, JSONUtil.toJsonStr(list));
-        return Result.ok(list);
+        return Result.ok(types);
+    }
+
+    @Override
+    public ShopTypeSnapshot snapshot() {
+        ShopTypeSnapshot current = snapshot.get();
+        if (current != null) {
+            return current;
+        }
+        //首次访问 加载快照
+        return reload(readVersion());
+    }
+
+    //修改店铺类型后调用 提升版本 所有节点从数据库加载新版本的列表
+    //提升版本必须在提交之后 否则新版本可能读到修改前的数据
+    @Override
+    public void refreshTypeList() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            bumpVersion();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                bumpVersion();
+            }
+        });
+    }
+
+    private void bumpVersion() {
+        Long version = stringRedisTemplate.opsForValue().increment(CACHE_SHOP_TYPE_VERSION_KEY);
+        stringRedisTemplate.convertAndSend(CACHE_SHOP_TYPE_CHANNEL, String.valueOf(version));
+    }
+
+    private void checkVersion() {
+        try {
+            long version = readVersion();
+            ShopTypeSnapshot current = snapshot.get();
+            if (current != null && current.getVersion() != version) {
+                reload(version);
+            }
+        } catch (Exception e) {
+            log.error("检查店铺类型版本失败", e);
+        }
+    }
+
+    private long readVersion() {
+        String version = stringRedisTemplate.opsForValue().get(CACHE_SHOP_TYPE_VERSION_KEY);
+        return version == null ? 0L : Long.parseLong(version);
+    }
+
+    //加载指定版本的快照 已是该版本时直接返回
+    private ShopTypeSnapshot reload(long version) {
+        synchronized (loadLock) {
+            ShopTypeSnapshot current = snapshot.get();
+            if (current != null && current.getVersion() == version) {
+                return current;
+            }
+            //只读写该版本的列表 其他节点晚于改版本读取数据库时写入的旧列表在旧版本的key下
+            String key = CACHE_SHOP_LIST_KEY + version;
+            List<ShopType> types = cacheClient.getList(key, ShopType.class);
+            //不存在 查询数据库
+            if (types == null || types.isEmpty()) {
+                types = query().orderByAsc("sort").list();
+                //存在 写入redis
+                if (!types.isEmpty()) {
+                    cacheClient.set(key, types, CACHE_SHOP_LIST_TTL, TimeUnit.HOURS);
+                }
+            }
+            Result result = types.isEmpty() ? Result.fail("暂无分类") : Result.ok(types);
+            ShopTypeSnapshot loaded;
+            try {
+                loaded = new ShopTypeSnapshot(version, types, objectMapper.writeValueAsBytes(result));
+            } catch (JsonProcessingException e) {
+                throw new IllegalStateException("店铺类型序列化失败", e);
+            }
+            snapshot.set(loaded);
+            log.info("店铺类型快照已更新 版本{} 共{}条", version, types.size());
+            return loaded;
+        }
     }
 }
@@ -4,6 +4,7 @@ import cn.hutool.core.bean.BeanUtil;
 import cn.hutool.core.bean.copier.CopyOptions;
 import cn.hutool.core.lang.UUID;
 import cn.hutool.core.util.RandomUtil;
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.hmdp.dto.LoginFormDTO;
 import com.hmdp.dto.Result;
@@ -11,19 +12,25 @@ import com.hmdp.dto.UserDTO;
 import com.hmdp.entity.User;
 import com.hmdp.mapper.UserMapper;
 import com.hmdp.service.IUserService;
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.CacheInvalidator;
 import com.hmdp.utils.RegexUtils;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.BeanUtils;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
 import javax.servlet.http.HttpSession;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 import static com.hmdp.utils.RedisConstants.*;
+import static com.hmdp.utils.SystemConstants.BLOOM_REBUILD_PAGE_SIZE;
 
 /**
  * <p>
@@ -39,6 +46,22 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
     @Resource
     private StringRedisTemplate stringRedisTemplate;
 
+    @Resource
+    private CacheClient cacheClient;
+    @Resource
+    private CacheInvalidator cacheInvalidator;
+
+    //启动时用全部用户id构建布隆过滤器 之后由CacheClient定时重建
+    @PostConstruct
+    public void initBloomFilter() {
+        cacheClient.registerBloomFilter(CACHE_USER_KEY, (Long lastId) -> listObjs(new QueryWrapper<User>()
+                        .select("id")
+                        .gt(lastId != null, "id", lastId)
+                        .orderByAsc("id")
+                        .last("limit " + BLOOM_REBUILD_PAGE_SIZE),
+                o -> Long.valueOf(o.toString())));
+    }
+
     //实现对应的方法
     @Override
     public Result sendCode(String phone, HttpSession session) {
@@ -92,12 +115,27 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
         return Result.ok(token);
     }
 
+    /*
+     *批量查询用户基本信息 走缓存 未命中的一次IN查询
+     * @param ids
+     * @return 用户id到UserDTO的映射
+     */
+    @Override
+    public Map<Long, UserDTO> queryUserDTOByIds(Collection<Long> ids) {
+        return cacheClient.queryBatchWithPassThrough(CACHE_USER_KEY, ids, UserDTO.class,
+                missIds -> listByIds(missIds).stream()
+                        .collect(Collectors.toMap(User::getId, user -> BeanUtil.copyProperties(user, UserDTO.class))),
+                CACHE_USER_TTL, TimeUnit.MINUTES);
+    }
+
     private User createUserWithPhone(String phone) {
         //创建用户
         User user = new User();
         user.setPhone(phone);
         user.setNickName("user_" + RandomUtil.randomString(10));
         save(user);
+        cacheClient.addToBloomFilter(CACHE_USER_KEY, user.getId());
+        cacheInvalidator.invalidate(CACHE_USER_KEY, user.getId());
         return user;
     }
 }
@@ -1,19 +1,41 @@
 package com.hmdp.service.impl;
 
+import com.hmdp.config.SeckillProperties;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.SeckillVoucher;
+import com.hmdp.entity.Voucher;
 import com.hmdp.entity.VoucherOrder;
 import com.hmdp.mapper.VoucherOrderMapper;
 import com.hmdp.service.ISeckillVoucherService;
 import com.hmdp.service.IVoucherOrderService;
+import com.hmdp.service.IVoucherService;
+import com.hmdp.utils.CacheInvalidator;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.hmdp.utils.RedisIdWorker;
+import com.hmdp.utils.RedisLock;
+import com.hmdp.utils.RedisLockClient;
+import com.hmdp.utils.SeckillAdmission;
+import com.hmdp.utils.SeckillPreheater;
 import com.hmdp.utils.UserHolder;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import javax.annotation.Resource;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.CACHE_VOUCHER_SHOP_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_LOAD_LOCK_KEY;
 
 /**
  * <p>
@@ -23,50 +45,216 @@ import java.time.LocalDateTime;
  * @author 虎哥
  * @since 2021-12-22
  */
+@Slf4j
 @Service
 public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, VoucherOrder> implements IVoucherOrderService {
     @Resource
     private ISeckillVoucherService seckillVoucherService;
     @Resource
     private RedisIdWorker redisIdWorker;
+    @Resource
+    private SeckillAdmission seckillAdmission;
+    @Resource
+    private SeckillPreheater seckillPreheater;
+    @Resource
+    private IVoucherService voucherService;
+    @Resource
+    private CacheInvalidator cacheInvalidator;
+    @Resource
+    private MeterRegistry meterRegistry;
+    @Resource
+    private RedisLockClient redisLockClient;
+    @Resource
+    private SeckillProperties seckillProperties;
 
     /*
      * 秒殺下單接口
+     * 资格判断在redis中完成 通过的订单写入redis stream 由SeckillOrderConsumer批量写库 请求不等待数据库
      * @author RenBoQing
      * @date 2023/2/24 0024 20:10
      * @param voucherId
      * @return com.hmdp.dto.Result
      */
-    @Transactional
     @Override
     public Result seckillVoucher(Long voucherId) {
-        //查询优惠券
-        SeckillVoucher voucher = seckillVoucherService.getById(voucherId);
-        //判断秒杀 是否开始
-        if (voucher.getBeginTime().isAfter(LocalDateTime.now())) {
-            return Result.fail("秒杀未开始");
-        }
-        if (voucher.getEndTime().isBefore(LocalDateTime.now())) {
-            return Result.fail("秒杀已结束");
-        }
-        //判断库存
-        if (voucher.getStock() < 1) {
+        //已售罄时在本地直接拒绝 不访问redis
+        if (seckillAdmission.isSoldOut(voucherId)) {
             return Result.fail("库存不足");
         }
-        //扣减库存
-        boolean success = seckillVoucherService.update().setSql("stock=stock-1").eq("voucher_id", voucherId).update();
-        //   创建订单
-        if (!success) {
-            return Result.fail("库存不足");
+        //已预热的优惠券在本地判断秒杀时间
+        SeckillVoucher preheated = seckillPreheater.get(voucherId);
+        if (preheated != null) {
+            LocalDateTime now = LocalDateTime.now();
+            if (preheated.getBeginTime().isAfter(now)) {
+                return Result.fail("秒杀未开始");
+            }
+            if (preheated.getEndTime().isBefore(now)) {
+                return Result.fail("秒杀已结束");
+            }
         }
-        VoucherOrder voucherOrder = new VoucherOrder();
-        //订单的id
-        long order = redisIdWorker.nextId("order");
-        voucherOrder.setVoucherId(voucherId);
-        voucherOrder.setId(order);
         Long userId = UserHolder.getUser().getId();
-        voucherOrder.setUserId(userId);
-        save(voucherOrder);
-        return Result.ok(voucherOrder.getId());
+        long orderId = redisIdWorker.nextId("order");
+        int result = seckillAdmission.admit(voucherId, userId, orderId);
+        if (result == SeckillAdmission.NOT_LOADED) {
+            //未预热的优惠券 从数据库加载一次
+            result = loadAndAdmit(voucherId, userId, orderId);
+        }
+        switch (result) {
+            case SeckillAdmission.OK:
+                return Result.ok(orderId);
+            case SeckillAdmission.SOLD_OUT:
+                return Result.fail("库存不足");
+            case SeckillAdmission.DUPLICATE:
+                return Result.fail("不允许重复下单");
+            case SeckillAdmission.NOT_STARTED:
+                return Result.fail("秒杀未开始");
+            case SeckillAdmission.ENDED:
+                return Result.fail("秒杀已结束");
+            default:
+                //库存未加载 数据库中也没有该秒杀券
+                return Result.fail("优惠券不存在");
+        }
+    }
+
+    /*
+     *加载库存后再判断资格
+     * 同一优惠券只由一个请求查询数据库并加载 其他请求等待锁的释放通知 醒来后库存通常已加载
+     * 等待超时时直接判断 仍未加载按优惠券不存在处理
+     * @param voucherId
+     * @param userId
+     * @param orderId
+     * @return SeckillAdmission的判断结果
+     */
+    private int loadAndAdmit(Long voucherId, Long userId, long orderId) {
+        RedisLock lock = redisLockClient.getLock(SECKILL_LOAD_LOCK_KEY + voucherId);
+        boolean locked;
+        try {
+            locked = lock.tryLock(seckillProperties.getStock().getLoadWaitTimeout().toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            locked = false;
+        }
+        if (!locked) {
+            return seckillAdmission.admit(voucherId, userId, orderId);
+        }
+        try {
+            //等待期间其他请求已经加载
+            int result = seckillAdmission.admit(voucherId, userId, orderId);
+            if (result != SeckillAdmission.NOT_LOADED) {
+                return result;
+            }
+            SeckillVoucher voucher = seckillVoucherService.getById(voucherId);
+            if (voucher == null) {
+                return SeckillAdmission.NOT_LOADED;
+            }
+            seckillAdmission.load(voucher);
+            return seckillAdmission.admit(voucherId, userId, orderId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /*
+     *批量写入已通过资格判断的订单
+     * 重复投递的订单按id跳过 数据库中依然校验一人一单
+     * 同一优惠券的库存合并为一条update扣减 库存不足时只写入剩余库存对应的订单
+     * 未写入的订单在提交后撤销redis中的资格 用户可以重新下单
+     * @param voucherOrders
+     */
+    @Transactional
+    @Override
+    public void createVoucherOrders(List<VoucherOrder> voucherOrders) {
+        if (voucherOrders.isEmpty()) {
+            return;
+        }
+        Set<Long> ids = voucherOrders.stream().map(VoucherOrder::getId).collect(Collectors.toSet());
+        Set<Long> voucherIds = voucherOrders.stream().map(VoucherOrder::getVoucherId).collect(Collectors.toSet());
+        Set<Long> userIds = voucherOrders.stream().map(VoucherOrder::getUserId).collect(Collectors.toSet());
+        //已经写入的订单和已经下过单的用户
+        Set<Long> savedIds = query().select("id").in("id", ids).list()
+                .stream().map(VoucherOrder::getId).collect(Collectors.toSet());
+        Set<String> purchased = query().select("user_id", "voucher_id")
+                .in("voucher_id", voucherIds).in("user_id", userIds).list()
+                .stream().map(o -> o.getUserId() + ":" + o.getVoucherId()).collect(Collectors.toSet());
+        //按优惠券分组
+        Map<Long, List<VoucherOrder>> ordersOfVoucher = new LinkedHashMap<>();
+        List<VoucherOrder> duplicated = new ArrayList<>();
+        List<VoucherOrder> soldOut = new ArrayList<>();
+        for (VoucherOrder voucherOrder : voucherOrders) {
+            if (savedIds.contains(voucherOrder.getId())) {
+                continue;
+            }
+            if (!purchased.add(voucherOrder.getUserId() + ":" + voucherOrder.getVoucherId())) {
+                log.error("用户已经购买过一次 userId={} voucherId={}", voucherOrder.getUserId(), voucherOrder.getVoucherId());
+                duplicated.add(voucherOrder);
+                continue;
+            }
+            ordersOfVoucher.computeIfAbsent(voucherOrder.getVoucherId(), k -> new ArrayList<>()).add(voucherOrder);
+        }
+        List<VoucherOrder> accepted = new ArrayList<>();
+        for (Map.Entry<Long, List<VoucherOrder>> entry : ordersOfVoucher.entrySet()) {
+            List<VoucherOrder> orders = entry.getValue();
+            int count = deductStock(entry.getKey(), orders.size());
+            if (count < orders.size()) {
+                log.error("库存不足 voucherId={} 订单{}条 写入{}条", entry.getKey(), orders.size(), count);
+            }
+            accepted.addAll(orders.subList(0, count));
+            soldOut.addAll(orders.subList(count, orders.size()));
+        }
+        releaseAfterCommit(duplicated, soldOut);
+        if (accepted.isEmpty()) {
+            return;
+        }
+        saveBatch(accepted);
+        //库存变化 店铺优惠券列表的ETag失效
+        Set<Long> changedVoucherIds = accepted.stream().map(VoucherOrder::getVoucherId).collect(Collectors.toSet());
+        List<String> keys = voucherService.listByIds(changedVoucherIds).stream()
+                .map(Voucher::getShopId).distinct()
+                .map(shopId -> CACHE_VOUCHER_SHOP_KEY + shopId)
+                .collect(Collectors.toList());
+        cacheInvalidator.invalidate(keys);
+    }
+
+    //提交后才撤销资格 事务回滚时订单留在pending列表重试
+    private void releaseAfterCommit(List<VoucherOrder> duplicated, List<VoucherOrder> soldOut) {
+        if (duplicated.isEmpty() && soldOut.isEmpty()) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                //用户已有订单 只归还多扣的库存
+                duplicated.forEach(o -> release(o, "duplicate", () -> seckillAdmission.releaseStock(o.getVoucherId(), o.getUserId())));
+                //数据库没有库存 只移除用户
+                soldOut.forEach(o -> release(o, "sold_out", () -> seckillAdmission.releaseUser(o.getVoucherId(), o.getUserId())));
+            }
+        });
+    }
+
+    private void release(VoucherOrder voucherOrder, String reason, Runnable action) {
+        meterRegistry.counter("seckill.orders.dropped", "reason", reason).increment();
+        try {
+            action.run();
+        } catch (RuntimeException e) {
+            log.error("撤销秒杀资格失败 {}", voucherOrder, e);
+        }
+    }
+
+    //一次扣减count个库存 不足时扣减剩余的全部库存 返回实际扣减的数量
+    private int deductStock(Long voucherId, int count) {
+        boolean success = seckillVoucherService.update()
+                .setSql("stock=stock-" + count)
+                .eq("voucher_id", voucherId)
+                .ge("stock", count)
+                .update();
+        if (success) {
+            return count;
+        }
+        SeckillVoucher voucher = seckillVoucherService.getById(voucherId);
+        int remaining = voucher == null ? 0 : Math.min(voucher.getStock(), count);
+        if (remaining <= 0) {
+            return 0;
+        }
+        return deductStock(voucherId, remaining);
     }
 }
@@ -7,12 +7,19 @@ import com.hmdp.mapper.VoucherMapper;
 import com.hmdp.entity.SeckillVoucher;
 import com.hmdp.service.ISeckillVoucherService;
 import com.hmdp.service.IVoucherService;
+import com.hmdp.utils.CacheInvalidator;
+import com.hmdp.utils.SeckillPreheater;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import javax.annotation.Resource;
 import java.util.List;
 
+import static com.hmdp.utils.RedisConstants.CACHE_VOUCHER_SHOP_KEY;
+
 /**
  * <p>
  *  服务实现类
@@ -21,11 +28,16 @@ import java.util.List;
  * @author 虎哥
  * @since 2021-12-22
  */
+@Slf4j
 @Service
 public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> implements IVoucherService {
 
     @Resource
     private ISeckillVoucherService seckillVoucherService;
+    @Resource
+    private CacheInvalidator cacheInvalidator;
+    @Resource
+    private SeckillPreheater seckillPreheater;
 
     @Override
     public Result queryVoucherOfShop(Long shopId) {
@@ -35,6 +47,14 @@ public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> impl
         return Result.ok(vouchers);
     }
 
+    @Override
+    @Transactional
+    public void addVoucher(Voucher voucher) {
+        save(voucher);
+        //店铺的优惠券列表已变化
+        cacheInvalidator.invalidate(CACHE_VOUCHER_SHOP_KEY, voucher.getShopId());
+    }
+
     @Override
     @Transactional
     public void addSeckillVoucher(Voucher voucher) {
@@ -47,5 +67,18 @@ public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> impl
         seckillVoucher.setBeginTime(voucher.getBeginTime());
         seckillVoucher.setEndTime(voucher.getEndTime());
         seckillVoucherService.save(seckillVoucher);
+        cacheInvalidator.invalidate(CACHE_VOUCHER_SHOP_KEY, voucher.getShopId());
+        //提交后登记预热 开始前由预热任务把库存写入redis
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                try {
+                    seckillPreheater.register(seckillVoucher);
+                } catch (RuntimeException e) {
+                    //首次下单时会从数据库加载
+                    log.error("秒杀券登记预热失败 voucherId={}", seckillVoucher.getVoucherId(), e);
+                }
+            }
+        });
     }
 }
@@ -0,0 +1,368 @@
+package com.hmdp.utils;
+
+import com.hmdp.dto.UserDTO;
+import com.hmdp.entity.Shop;
+import com.hmdp.entity.ShopType;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author RenBoQing
+ * @date 2026年10月18日 13:52
+ * @Description 紧凑二进制编解码
+ * 格式: MAGIC | 类型id | 结构版本 | 字段...
+ * 每个类型单独维护结构版本 新增字段时提升版本号并在read中按版本判断 旧版本的缓存依然可读
+ */
+@Component
+@Order(0)
+public class BinaryCacheCodec implements CacheCodec {
+
+    public static final String NAME = "binary";
+
+    public static final byte MAGIC = (byte) 0xCB;
+
+    private static final byte TYPE_REDIS_DATA = 100;
+    private static final byte TYPE_LIST = 101;
+
+    private final Map<Class<?>, Schema<?>> schemasByType = new HashMap<>();
+    private final Map<Byte, Schema<?>> schemasById = new HashMap<>();
+
+    public BinaryCacheCodec() {
+        register(new Schema<Shop>(Shop.class, (byte) 1, (byte) 1) {
+            @Override
+            void write(DataOutputStream out, Shop shop) throws IOException {
+                writeLong(out, shop.getId());
+                writeString(out, shop.getName());
+                writeLong(out, shop.getTypeId());
+                writeString(out, shop.getImages());
+                writeString(out, shop.getArea());
+                writeString(out, shop.getAddress());
+                writeDouble(out, shop.getX());
+                writeDouble(out, shop.getY());
+                writeLong(out, shop.getAvgPrice());
+                writeInt(out, shop.getSold());
+                writeInt(out, shop.getComments());
+                writeInt(out, shop.getScore());
+                writeString(out, shop.getOpenHours());
+                writeDateTime(out, shop.getCreateTime());
+                writeDateTime(out, shop.getUpdateTime());
+                writeDouble(out, shop.getDistance());
+            }
+
+            @Override
+            Shop read(DataInputStream in, int version) throws IOException {
+                Shop shop = new Shop();
+                shop.setId(readLong(in));
+                shop.setName(readString(in));
+                shop.setTypeId(readLong(in));
+                shop.setImages(readString(in));
+                shop.setArea(readString(in));
+                shop.setAddress(readString(in));
+                shop.setX(readDouble(in));
+                shop.setY(readDouble(in));
+                shop.setAvgPrice(readLong(in));
+                shop.setSold(readInt(in));
+                shop.setComments(readInt(in));
+                shop.setScore(readInt(in));
+                shop.setOpenHours(readString(in));
+                shop.setCreateTime(readDateTime(in));
+                shop.setUpdateTime(readDateTime(in));
+                shop.setDistance(readDouble(in));
+                return shop;
+            }
+        });
+        register(new Schema<ShopType>(ShopType.class, (byte) 2, (byte) 1) {
+            @Override
+            void write(DataOutputStream out, ShopType shopType) throws IOException {
+                writeLong(out, shopType.getId());
+                writeString(out, shopType.getName());
+                writeString(out, shopType.getIcon());
+                writeInt(out, shopType.getSort());
+                writeDateTime(out, shopType.getCreateTime());
+                writeDateTime(out, shopType.getUpdateTime());
+            }
+
+            @Override
+            ShopType read(DataInputStream in, int version) throws IOException {
+                ShopType shopType = new ShopType();
+                shopType.setId(readLong(in));
+                shopType.setName(readString(in));
+                shopType.setIcon(readString(in));
+                shopType.setSort(readInt(in));
+                shopType.setCreateTime(readDateTime(in));
+                shopType.setUpdateTime(readDateTime(in));
+                return shopType;
+            }
+        });
+        register(new Schema<UserDTO>(UserDTO.class, (byte) 3, (byte) 1) {
+            @Override
+            void write(DataOutputStream out, UserDTO user) throws IOException {
+                writeLong(out, user.getId());
+                writeString(out, user.getNickName());
+                writeString(out, user.getIcon());
+            }
+
+            @Override
+            UserDTO read(DataInputStream in, int version) throws IOException {
+                UserDTO user = new UserDTO();
+                user.setId(readLong(in));
+                user.setNickName(readString(in));
+                user.setIcon(readString(in));
+                return user;
+            }
+        });
+    }
+
+    private void register(Schema<?> schema) {
+        schemasByType.put(schema.type, schema);
+        schemasById.put(schema.typeId, schema);
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public boolean supports(Object value) {
+        if (value instanceof RedisData) {
+            Object data = ((RedisData) value).getData();
+            return data == null || supports(data);
+        }
+        if (value instanceof List) {
+            for (Object element : (List<?>) value) {
+                if (element == null || !schemasByType.containsKey(element.getClass())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return value != null && schemasByType.containsKey(value.getClass());
+    }
+
+    @Override
+    public boolean canDecode(byte[] bytes) {
+        return bytes.length > 0 && bytes[0] == MAGIC;
+    }
+
+    @Override
+    public byte[] encode(Object value) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(MAGIC);
+            writeValue(out, value);
+        } catch (IOException e) {
+            throw new IllegalStateException("二进制编码失败", e);
+        }
+        return bytes.toByteArray();
+    }
+
+    @Override
+    public <T> T decode(byte[] bytes, Class<T> type) {
+        return type.cast(readAll(bytes));
+    }
+
+    @Override
+    public <T> List<T> decodeList(byte[] bytes, Class<T> elementType) {
+        List<?> list = (List<?>) readAll(bytes);
+        List<T> result = new ArrayList<>(list.size());
+        list.forEach(element -> result.add(elementType.cast(element)));
+        return result;
+    }
+
+    @Override
+    public RedisData decodeRedisData(byte[] bytes, Class<?> dataType) {
+        return (RedisData) readAll(bytes);
+    }
+
+    private Object readAll(byte[] bytes) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            if (in.readByte() != MAGIC) {
+                throw new IllegalStateException("不是二进制编码的缓存");
+            }
+            return readValue(in);
+        } catch (IOException e) {
+            throw new IllegalStateException("二进制解码失败", e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value instanceof RedisData) {
+            RedisData redisData = (RedisData) value;
+            out.writeByte(TYPE_REDIS_DATA);
+            out.writeByte(1);
+            writeDateTime(out, redisData.getExpireTime());
+            writeLong(out, redisData.getDelta());
+            out.writeBoolean(redisData.getData() != null);
+            if (redisData.getData() != null) {
+                writeValue(out, redisData.getData());
+            }
+            return;
+        }
+        if (value instanceof List) {
+            List<?> list = (List<?>) value;
+            out.writeByte(TYPE_LIST);
+            out.writeByte(1);
+            writeVarInt(out, list.size());
+            for (Object element : list) {
+                writeValue(out, element);
+            }
+            return;
+        }
+        Schema<Object> schema = (Schema<Object>) schemasByType.get(value.getClass());
+        if (schema == null) {
+            throw new IllegalArgumentException("不支持二进制编码的类型: " + value.getClass());
+        }
+        out.writeByte(schema.typeId);
+        out.writeByte(schema.version);
+        schema.write(out, value);
+    }
+
+    private Object readValue(DataInputStream in) throws IOException {
+        byte typeId = in.readByte();
+        int version = in.readUnsignedByte();
+        if (typeId == TYPE_REDIS_DATA) {
+            RedisData redisData = new RedisData();
+            redisData.setExpireTime(readDateTime(in));
+            redisData.setDelta(readLong(in));
+            if (in.readBoolean()) {
+                redisData.setData(readValue(in));
+            }
+            return redisData;
+        }
+        if (typeId == TYPE_LIST) {
+            int size = readVarInt(in);
+            List<Object> list = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                list.add(readValue(in));
+            }
+            return list;
+        }
+        Schema<?> schema = schemasById.get(typeId);
+        if (schema == null || version > schema.version) {
+            //其他节点用更新的结构写入 当前版本无法解析
+            throw new IllegalStateException("未知的二进制结构 type=" + typeId + " version=" + version);
+        }
+        return schema.read(in, version);
+    }
+
+    private abstract static class Schema<T> {
+        final Class<T> type;
+        final byte typeId;
+        //当前写入的结构版本
+        final byte version;
+
+        Schema(Class<T> type, byte typeId, byte version) {
+            this.type = type;
+            this.typeId = typeId;
+            this.version = version;
+        }
+
+        abstract void write(DataOutputStream out, T value) throws IOException;
+
+        //version为写入时的结构版本 小于等于当前版本
+        abstract T read(DataInputStream in, int version) throws IOException;
+    }
+
+    private static void writeLong(DataOutputStream out, Long value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeLong(value);
+        }
+    }
+
+    private static Long readLong(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readLong() : null;
+    }
+
+    private static void writeInt(DataOutputStream out, Integer value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeInt(value);
+        }
+    }
+
+    private static Integer readInt(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readInt() : null;
+    }
+
+    private static void writeDouble(DataOutputStream out, Double value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeDouble(value);
+        }
+    }
+
+    private static Double readDouble(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readDouble() : null;
+    }
+
+    //字符串 变长长度+1 0表示null
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            writeVarInt(out, 0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, bytes.length + 1);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = readVarInt(in) - 1;
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    //每个字节低7位存数据 最高位表示后面还有字节
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("变长整数格式错误");
+    }
+
+    //时间按UTC毫秒存储
+    private static void writeDateTime(DataOutputStream out, LocalDateTime value) throws IOException {
+        writeLong(out, value == null ? null : value.toInstant(ZoneOffset.UTC).toEpochMilli());
+    }
+
+    private static LocalDateTime readDateTime(DataInputStream in) throws IOException {
+        Long millis = readLong(in);
+        if (millis == null) {
+            return null;
+        }
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(millis, 1000L), (int) Math.floorMod(millis, 1000L) * 1000000, ZoneOffset.UTC);
+    }
+}
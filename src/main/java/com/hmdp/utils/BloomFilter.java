@@ -0,0 +1,164 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.lang.hash.MurmurHash;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author RenBoQing
+ * @date 2026年10月18日 11:05
+ * @Description 进程内布隆过滤器 线程安全 只增不删
+ * 重建时先写入新的位数组 期间新增的元素同时写入新旧两个数组 完成后整体替换
+ */
+public class BloomFilter {
+    //位数组
+    private volatile AtomicLongArray bits;
+    //重建中的位数组 未在重建时为null
+    private volatile AtomicLongArray rebuilding;
+    //重建中的位数组已插入的元素个数
+    private final LongAdder rebuildingInsertions = new LongAdder();
+    //位数
+    private final long bitSize;
+    //哈希函数个数
+    private final int hashCount;
+    //已插入的元素个数(近似)
+    private final LongAdder insertions = new LongAdder();
+    //判定不存在而直接拦截的请求
+    private final LongAdder rejected = new LongAdder();
+    //判定可能存在的请求
+    private final LongAdder passed = new LongAdder();
+    //判定可能存在 但数据库查不到的请求 即误判
+    private final LongAdder falsePositives = new LongAdder();
+    //启动时全量重建完成前不做拦截
+    private volatile boolean ready;
+
+    /*
+     * @param expectedInsertions 预计元素个数
+     * @param fpp 期望误判率
+     */
+    public BloomFilter(long expectedInsertions, double fpp) {
+        long n = Math.max(1L, expectedInsertions);
+        long m = (long) Math.ceil(-n * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+        this.bitSize = Math.max(64L, m);
+        this.hashCount = Math.max(1, (int) Math.round((double) bitSize / n * Math.log(2)));
+        this.bits = new AtomicLongArray((int) ((bitSize + 63) >>> 6));
+    }
+
+    public void put(String value) {
+        long[] hash = MurmurHash.hash128(value);
+        if (set(bits, hash)) {
+            insertions.increment();
+        }
+        AtomicLongArray next = rebuilding;
+        if (next != null && set(next, hash)) {
+            rebuildingInsertions.increment();
+        }
+    }
+
+    //开始重建 之后用 putRebuilding 写入全量数据
+    public void startRebuild() {
+        rebuildingInsertions.reset();
+        rebuilding = new AtomicLongArray(bits.length());
+    }
+
+    public void putRebuilding(String value) {
+        if (set(rebuilding, MurmurHash.hash128(value))) {
+            rebuildingInsertions.increment();
+        }
+    }
+
+    //用重建好的位数组替换当前位数组
+    public void finishRebuild() {
+        bits = rebuilding;
+        rebuilding = null;
+        insertions.reset();
+        insertions.add(rebuildingInsertions.sum());
+    }
+
+    //重建失败 继续使用当前位数组
+    public void abortRebuild() {
+        rebuilding = null;
+    }
+
+    //置位 返回是否有位发生变化
+    private boolean set(AtomicLongArray array, long[] hash) {
+        boolean changed = false;
+        for (int i = 0; i < hashCount; i++) {
+            long index = index(hash, i);
+            int slot = (int) (index >>> 6);
+            long mask = 1L << index;
+            long old;
+            do {
+                old = array.get(slot);
+                if ((old & mask) != 0) {
+                    break;
+                }
+            } while (!array.compareAndSet(slot, old, old | mask));
+            changed |= (old & mask) == 0;
+        }
+        return changed;
+    }
+
+    public boolean mightContain(String value) {
+        long[] hash = MurmurHash.hash128(value);
+        AtomicLongArray current = bits;
+        for (int i = 0; i < hashCount; i++) {
+            long index = index(hash, i);
+            if ((current.get((int) (index >>> 6)) & (1L << index)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    //双重哈希 h1 + i * h2
+    private long index(long[] hash, int i) {
+        long combined = hash[0] + i * hash[1];
+        return (combined & Long.MAX_VALUE) % bitSize;
+    }
+
+    //按当前元素个数估算的理论误判率 (1 - e^(-kn/m))^k
+    public double expectedFpp() {
+        return Math.pow(1 - Math.exp(-hashCount * insertions.doubleValue() / bitSize), hashCount);
+    }
+
+    //线上实测误判率 误判数 / 所有不存在的id的请求数
+    public double observedFpp() {
+        double falsePositive = falsePositives.doubleValue();
+        double absent = falsePositive + rejected.doubleValue();
+        return absent == 0 ? 0 : falsePositive / absent;
+    }
+
+    public void recordRejected() {
+        rejected.increment();
+    }
+
+    public void recordPassed() {
+        passed.increment();
+    }
+
+    public void recordFalsePositive() {
+        falsePositives.increment();
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    public long getPassed() {
+        return passed.sum();
+    }
+
+    public long getFalsePositives() {
+        return falsePositives.sum();
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public void setReady(boolean ready) {
+        this.ready = ready;
+    }
+}
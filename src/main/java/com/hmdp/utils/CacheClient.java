@@ -1,20 +1,49 @@
 package com.hmdp.utils;
 
-import cn.hutool.core.util.BooleanUtil;
-import cn.hutool.core.util.StrUtil;
-import cn.hutool.json.JSONObject;
-import cn.hutool.json.JSONUtil;
-import com.hmdp.entity.Shop;
-import com.sun.org.apache.regexp.internal.RE;
+import cn.hutool.cache.Cache;
+import cn.hutool.cache.CacheUtil;
+import cn.hutool.core.util.IdUtil;
+import cn.hutool.crypto.digest.DigestUtil;
+import com.hmdp.config.CacheClientProperties;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
-import java.util.concurrent.ExecutorService;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static com.hmdp.utils.RedisConstants.*;
 
@@ -23,22 +52,502 @@ import static com.hmdp.utils.RedisConstants.*;
  * @date 2023年02月23日 17:14
  * @Description
  */
+@Slf4j
 @Component
 public class CacheClient {
     @Resource
     private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private RedisTemplate<String, byte[]> byteRedisTemplate;
+    @Resource
+    private CacheCodecs cacheCodecs;
+    @Resource
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+    @Resource
+    private CacheClientProperties cacheClientProperties;
+    @Resource
+    private MeterRegistry meterRegistry;
+    @Resource
+    private HotKeyDetector hotKeyDetector;
+    @Resource
+    private CacheMetrics cacheMetrics;
+    @Resource
+    private CacheRebuildExecutor cacheRebuildExecutor;
+    @Resource
+    private RedisLockClient redisLockClient;
+    @Resource
+    private CacheLoadGuard cacheLoadGuard;
+
+    //本地一级缓存中的空值占位
+    private static final Object NULL_VALUE = new Object();
+
+    //本地一级缓存 未开启时为null
+    private Cache<String, Object> localCache;
+
+    //本进程内正在加载的key
+    private final ConcurrentHashMap<String, CompletableFuture<Object>> inFlightLoads = new ConcurrentHashMap<>();
+
+    //等待其他节点重建完成的key
+    private final ConcurrentHashMap<String, CompletableFuture<Void>> remoteLoadWaiters = new ConcurrentHashMap<>();
+
+    //布隆过滤器 key为缓存前缀
+    private final ConcurrentHashMap<String, BloomFilter> bloomFilters = new ConcurrentHashMap<>();
+
+    //布隆过滤器的数据来源和广播接收情况 key为缓存前缀
+    private final ConcurrentHashMap<String, BloomSync> bloomSyncs = new ConcurrentHashMap<>();
+
+    //布隆过滤器定时重建
+    private ScheduledExecutorService bloomScheduler;
+
+    //命名空间的代数 key为缓存前缀
+    private final ConcurrentHashMap<String, Generation> generations = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        CacheClientProperties.Local local = cacheClientProperties.getLocal();
+        if (local.isEnabled()) {
+            localCache = CacheUtil.newLRUCache(local.getMaximumSize(), local.getExpireAfterWrite().toMillis());
+        }
+        //订阅失效广播 其他节点删除缓存时同步清理本地缓存 一条消息可能包含多个key 以换行分隔
+        redisMessageListenerContainer.addMessageListener((message, pattern) -> {
+            for (String key : new String(message.getBody(), StandardCharsets.UTF_8).split("\n")) {
+                evictLocal(key);
+            }
+        }, new ChannelTopic(CACHE_INVALIDATE_CHANNEL));
+        //其他节点重建完成 唤醒本节点等待的线程
+        redisMessageListenerContainer.addMessageListener((message, pattern) -> {
+            CompletableFuture<Void> loaded = remoteLoadWaiters.remove(new String(message.getBody(), StandardCharsets.UTF_8));
+            if (loaded != null) {
+                loaded.complete(null);
+            }
+        }, new ChannelTopic(CACHE_LOADED_CHANNEL));
+        //其他节点新增的数据同步加入本地布隆过滤器
+        redisMessageListenerContainer.addMessageListener((message, pattern) ->
+                        onBloomAdd(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(CACHE_BLOOM_CHANNEL));
+        CacheClientProperties.Bloom bloom = cacheClientProperties.getBloom();
+        if (bloom.isEnabled()) {
+            bloomScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "cache-bloom");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long rebuild = bloom.getRebuildInterval().toMillis();
+            long check = bloom.getCheckInterval().toMillis();
+            bloomScheduler.scheduleWithFixedDelay(() -> bloomSyncs.keySet().forEach(this::rebuildBloomFilterQuietly),
+                    rebuild, rebuild, TimeUnit.MILLISECONDS);
+            bloomScheduler.scheduleWithFixedDelay(this::checkBloomFilters, check, check, TimeUnit.MILLISECONDS);
+        }
+        //其他节点提升了命名空间代数 消息为 前缀\n代数
+        redisMessageListenerContainer.addMessageListener((message, pattern) -> {
+            String[] parts = new String(message.getBody(), StandardCharsets.UTF_8).split("\n");
+            long generation = Long.parseLong(parts[1]);
+            generations.merge(parts[0], new Generation(generation),
+                    (old, bumped) -> old.value >= bumped.value ? old : bumped);
+        }, new ChannelTopic(CACHE_NAMESPACE_CHANNEL));
+    }
+
+    /*
+     *逻辑key转换为redis中实际使用的key
+     * 开启了命名空间的前缀会带上当前代数 cache:shop:1 -> cache:shop:3#1
+     * @param keyPrefix
+     * @param id
+     * @return 实际的key
+     */
+    public String key(String keyPrefix, Object id) {
+        return resolve(keyPrefix + id);
+    }
+
+    private String resolve(String key) {
+        for (String prefix : cacheClientProperties.getNamespace().getPrefixes()) {
+            if (key.startsWith(prefix)) {
+                return prefix + generation(prefix) + "#" + key.substring(prefix.length());
+            }
+        }
+        return key;
+    }
+
+    //命名空间的当前代数 本地缓存一段时间 期间的变化由广播通知
+    public long generation(String keyPrefix) {
+        Generation generation = generations.get(keyPrefix);
+        long refreshMillis = cacheClientProperties.getNamespace().getRefreshInterval().toMillis();
+        if (generation != null && System.currentTimeMillis() - generation.loadedAt < refreshMillis) {
+            return generation.value;
+        }
+        String value = stringRedisTemplate.opsForValue().get(CACHE_NAMESPACE_KEY + keyPrefix);
+        generation = new Generation(value == null ? 0L : Long.parseLong(value));
+        generations.put(keyPrefix, generation);
+        return generation.value;
+    }
+
+    /*
+     *提升命名空间代数 该前缀下的所有key一次性失效
+     * 旧代数的key不再被访问 由ttl自然过期
+     * @param keyPrefix 开启了命名空间的前缀
+     * @return 新的代数
+     */
+    public long bumpNamespace(String keyPrefix) {
+        Long generation = stringRedisTemplate.opsForValue().increment(CACHE_NAMESPACE_KEY + keyPrefix);
+        generations.put(keyPrefix, new Generation(generation));
+        stringRedisTemplate.convertAndSend(CACHE_NAMESPACE_CHANNEL, keyPrefix + "\n" + generation);
+        return generation;
+    }
+
+    private static final class Generation {
+        final long value;
+        final long loadedAt = System.currentTimeMillis();
+
+        Generation(long value) {
+            this.value = value;
+        }
+    }
+
+    //删除缓存 并通知所有节点清理本地缓存
+    public void delete(String key) {
+        deleteBatch(Collections.singletonList(key));
+    }
+
+    //批量删除缓存 UNLINK和失效广播在同一个pipeline中发送 同时删除对应的响应缓存 版本号和旧副本
+    //数据已被修改 数据库出错时不能再返回修改前的旧副本
+    public void deleteBatch(Collection<String> logicalKeys) {
+        if (logicalKeys.isEmpty()) {
+            return;
+        }
+        List<String> keys = logicalKeys.stream().map(this::resolve).collect(Collectors.toList());
+        keys.forEach(this::evictLocal);
+        byte[][] rawKeys = keys.stream()
+                .flatMap(key -> Stream.of(key, CACHE_RESPONSE_KEY + key, CACHE_VERSION_KEY + key, CACHE_STALE_KEY + key))
+                .map(key -> key.getBytes(StandardCharsets.UTF_8))
+                .toArray(byte[][]::new);
+        byte[] message = String.join("\n", keys).getBytes(StandardCharsets.UTF_8);
+        byteRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            connection.unlink(rawKeys);
+            connection.publish(CACHE_INVALIDATE_CHANNEL.getBytes(StandardCharsets.UTF_8), message);
+            return null;
+        });
+    }
+
+    /*
+     *缓存实体的版本号 用作ETag
+     * 版本号是缓存内容的摘要 与实体在同一个pipeline中写入 随实体一起删除 ETag始终对应缓存中的数据
+     * @param key 实体缓存的key
+     * @return 版本号 实体未缓存时返回null
+     */
+    public String version(String key) {
+        return stringRedisTemplate.opsForValue().get(CACHE_VERSION_KEY + resolve(key));
+    }
+
+    /*
+     *不经过缓存的数据的版本号 用作ETag
+     * 首次读取时生成随机值 随失效一起删除 redis被清空也不会与旧版本重复
+     * 只适用于在判断版本之后才查询数据库的接口 查到的数据不会早于版本号
+     * @param key 失效时使用的key
+     * @return 版本号
+     */
+    public String randomVersion(String key) {
+        String versionKey = CACHE_VERSION_KEY + resolve(key);
+        String version = stringRedisTemplate.opsForValue().get(versionKey);
+        if (version != null) {
+            return version;
+        }
+        version = IdUtil.fastSimpleUUID();
+        Boolean created = stringRedisTemplate.opsForValue().setIfAbsent(versionKey, version, CACHE_VERSION_TTL, TimeUnit.HOURS);
+        //其他线程先生成了版本号
+        return Boolean.TRUE.equals(created) ? version : stringRedisTemplate.opsForValue().get(versionKey);
+    }
+
+    private void evictLocal(String key) {
+        hotKeyDetector.evict(key);
+        hotKeyDetector.evict(CACHE_RESPONSE_KEY + key);
+        if (localCache != null) {
+            localCache.remove(key);
+        }
+    }
+
+    //写入本地缓存 空值的存活时间不超过CACHE_NULL_TTL
+    private void putLocal(String key, Object value) {
+        //热点key同时固定在进程内
+        hotKeyDetector.pin(key, value == null ? NULL_VALUE : value);
+        if (localCache == null) {
+            return;
+        }
+        if (value == null) {
+            long nullTtl = Math.min(TimeUnit.MINUTES.toMillis(CACHE_NULL_TTL), localCache.timeout());
+            localCache.put(key, NULL_VALUE, nullTtl);
+            return;
+        }
+        localCache.put(key, value);
+    }
 
-    //写入redis
+    //写入redis 按key前缀选择编码
     public void set(String key, Object value, Long time, TimeUnit unit) {
-        stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(value), time, unit);
+        write(resolve(key), value, time, unit);
+    }
+
+    //写入redis 不过期
+    public void set(String key, Object value) {
+        String physicalKey = resolve(key);
+        write(physicalKey, encode(physicalKey, value), Expiration.persistent());
     }
 
     //设置逻辑过期时间
     public void setWithLogicalExpire(String key, Object value, Long time, TimeUnit unit) {
+        writeWithLogicalExpire(resolve(key), value, time, unit);
+    }
+
+    //按实际的key写入
+    private void write(String key, Object value, Long time, TimeUnit unit) {
+        write(key, encode(key, value), Expiration.from(time, unit));
+    }
+
+    private void writeWithLogicalExpire(String key, Object value, Long time, TimeUnit unit) {
         RedisData redisData = new RedisData();
         redisData.setData(value);
         redisData.setExpireTime(LocalDateTime.now().plusSeconds(unit.toSeconds(time)));
-        stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(value));
+        write(key, encode(key, redisData), Expiration.persistent());
+    }
+
+    //数据和版本号在同一个pipeline中写入
+    private void write(String key, byte[] bytes, Expiration expiration) {
+        byteRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            connection.set(key.getBytes(StandardCharsets.UTF_8), bytes, expiration, RedisStringCommands.SetOption.upsert());
+            connection.set(versionKey(key), versionOf(bytes), expiration, RedisStringCommands.SetOption.upsert());
+            return null;
+        });
+    }
+
+    private static byte[] versionKey(String key) {
+        return (CACHE_VERSION_KEY + key).getBytes(StandardCharsets.UTF_8);
+    }
+
+    //版本号为缓存内容的摘要
+    private static byte[] versionOf(byte[] bytes) {
+        return DigestUtil.md5Hex(bytes).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /*
+     *批量写入不存在的key 一次pipeline往返 已有的值可能比批量读出的数据更新 不覆盖
+     * 每个key的过期时间随机增加最多10% 避免批量写入的key同时过期
+     * @param entries key到数据的映射
+     */
+    public void setBatchIfAbsent(Map<String, ?> entries, Long time, TimeUnit unit) {
+        long seconds = unit.toSeconds(time);
+        byteRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            entries.forEach((logicalKey, value) -> {
+                String key = resolve(logicalKey);
+                long jitter = ThreadLocalRandom.current().nextLong(seconds / 10 + 1);
+                byte[] bytes = encode(key, value);
+                Expiration expiration = Expiration.seconds(seconds + jitter);
+                connection.set(key.getBytes(StandardCharsets.UTF_8), bytes, expiration, RedisStringCommands.SetOption.ifAbsent());
+                connection.set(versionKey(key), versionOf(bytes), expiration, RedisStringCommands.SetOption.ifAbsent());
+            });
+            return null;
+        });
+    }
+
+    //批量写入不存在的逻辑过期数据 一次pipeline往返
+    public void setBatchWithLogicalExpireIfAbsent(Map<String, ?> entries, Long time, TimeUnit unit) {
+        LocalDateTime expireTime = LocalDateTime.now().plusSeconds(unit.toSeconds(time));
+        byteRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            entries.forEach((logicalKey, value) -> {
+                String key = resolve(logicalKey);
+                RedisData redisData = new RedisData();
+                redisData.setData(value);
+                redisData.setExpireTime(expireTime);
+                byte[] bytes = encode(key, redisData);
+                connection.setNX(key.getBytes(StandardCharsets.UTF_8), bytes);
+                connection.setNX(versionKey(key), versionOf(bytes));
+            });
+            return null;
+        });
+    }
+
+    //编码 同时记录编码后的大小
+    private byte[] encode(String key, Object value) {
+        byte[] bytes = cacheCodecs.encode(key, value);
+        cacheMetrics.valueSize(key, bytes.length);
+        return bytes;
+    }
+
+    //读取列表 不存在返回null
+    public <R> List<R> getList(String logicalKey, Class<R> elementType) {
+        String key = resolve(logicalKey);
+        byte[] bytes = byteRedisTemplate.opsForValue().get(key);
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        return cacheCodecs.decodeList(key, bytes, elementType);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (bloomScheduler != null) {
+            bloomScheduler.shutdownNow();
+        }
+    }
+
+    /*
+     *为缓存前缀注册布隆过滤器并全量构建 未开启时不做任何事
+     * 之后定时全量重建 发现漏收其他节点的新增广播时也会重建
+     * @param keyPrefix
+     * @param nextPage 传入上一页最后一个id(首页为null) 返回下一页id 返回空列表时结束
+     */
+    @SuppressWarnings("unchecked")
+    public <ID> void registerBloomFilter(String keyPrefix, Function<ID, List<ID>> nextPage) {
+        CacheClientProperties.Bloom bloom = cacheClientProperties.getBloom();
+        if (!bloom.isEnabled()) {
+            return;
+        }
+        BloomFilter filter = new BloomFilter(bloom.getExpectedInsertions(), bloom.getFpp());
+        if (bloomFilters.putIfAbsent(keyPrefix, filter) != null) {
+            return;
+        }
+        bloomSyncs.put(keyPrefix, new BloomSync((Function<Object, List<Object>>) (Function<?, ?>) nextPage));
+        Gauge.builder("cache.bloom.fpp", filter, BloomFilter::observedFpp)
+                .tag("prefix", keyPrefix).tag("type", "observed").register(meterRegistry);
+        Gauge.builder("cache.bloom.fpp", filter, BloomFilter::expectedFpp)
+                .tag("prefix", keyPrefix).tag("type", "expected").register(meterRegistry);
+        FunctionCounter.builder("cache.bloom.requests", filter, BloomFilter::getRejected)
+                .tag("prefix", keyPrefix).tag("result", "rejected").register(meterRegistry);
+        FunctionCounter.builder("cache.bloom.requests", filter, BloomFilter::getPassed)
+                .tag("prefix", keyPrefix).tag("result", "passed").register(meterRegistry);
+        FunctionCounter.builder("cache.bloom.requests", filter, BloomFilter::getFalsePositives)
+                .tag("prefix", keyPrefix).tag("result", "false_positive").register(meterRegistry);
+        rebuildBloomFilter(keyPrefix);
+    }
+
+    /*
+     *全量重建布隆过滤器 首次构建完成前不做拦截 之后重建期间继续使用旧的位数组
+     * 先记下广播序号再扫描 扫描期间新增的数据由广播补上
+     * @param keyPrefix
+     */
+    public void rebuildBloomFilter(String keyPrefix) {
+        BloomFilter filter = bloomFilters.get(keyPrefix);
+        BloomSync sync = bloomSyncs.get(keyPrefix);
+        if (filter == null || sync == null) {
+            return;
+        }
+        synchronized (sync) {
+            sync.reset(bloomSeq(keyPrefix));
+            filter.startRebuild();
+            try {
+                Object lastId = null;
+                List<Object> ids;
+                while (!(ids = sync.nextPage.apply(lastId)).isEmpty()) {
+                    ids.forEach(id -> filter.putRebuilding(String.valueOf(id)));
+                    lastId = ids.get(ids.size() - 1);
+                }
+            } catch (RuntimeException e) {
+                filter.abortRebuild();
+                throw e;
+            }
+            filter.finishRebuild();
+            filter.setReady(true);
+        }
+        log.debug("布隆过滤器重建完成 prefix={}", keyPrefix);
+    }
+
+    private void rebuildBloomFilterQuietly(String keyPrefix) {
+        try {
+            rebuildBloomFilter(keyPrefix);
+        } catch (Exception e) {
+            log.error("重建布隆过滤器失败 prefix={}", keyPrefix, e);
+        }
+    }
+
+    /*
+     *比较redis中的广播序号和本节点收到的广播数 连续两次检查都有缺少时重建
+     * 订阅断开重连 监听容器启动前发出的广播都会在这里被发现
+     */
+    private void checkBloomFilters() {
+        bloomSyncs.forEach((keyPrefix, sync) -> {
+            try {
+                long seq = bloomSeq(keyPrefix);
+                long missing = seq - sync.base - sync.received.sum();
+                //序号回退说明redis数据丢失 同样重建
+                if (seq < sync.base || (missing > 0 && sync.lagging)) {
+                    log.warn("布隆过滤器漏收新增广播{}条 重建 prefix={}", missing, keyPrefix);
+                    rebuildBloomFilter(keyPrefix);
+                    return;
+                }
+                //广播可能还在路上 下次检查时依然缺少才重建
+                sync.lagging = missing > 0;
+            } catch (Exception e) {
+                log.error("检查布隆过滤器失败 prefix={}", keyPrefix, e);
+            }
+        });
+    }
+
+    private long bloomSeq(String keyPrefix) {
+        String seq = stringRedisTemplate.opsForValue().get(CACHE_BLOOM_SEQ_KEY + keyPrefix);
+        return seq == null ? 0L : Long.parseLong(seq);
+    }
+
+    //新增数据后加入布隆过滤器 并带上序号广播给其他节点 消息为 key\n序号
+    public void addToBloomFilter(String keyPrefix, Object id) {
+        BloomFilter filter = bloomFilters.get(keyPrefix);
+        if (filter == null) {
+            return;
+        }
+        filter.put(String.valueOf(id));
+        Long seq = stringRedisTemplate.opsForValue().increment(CACHE_BLOOM_SEQ_KEY + keyPrefix);
+        stringRedisTemplate.convertAndSend(CACHE_BLOOM_CHANNEL, keyPrefix + id + "\n" + seq);
+    }
+
+    //其他节点新增的数据 本节点发出的广播也会收到
+    private void onBloomAdd(String message) {
+        String[] parts = message.split("\n");
+        String key = parts[0];
+        long seq = parts.length > 1 ? Long.parseLong(parts[1]) : 0L;
+        bloomFilters.forEach((keyPrefix, filter) -> {
+            if (key.startsWith(keyPrefix)) {
+                filter.put(key.substring(keyPrefix.length()));
+                BloomSync sync = bloomSyncs.get(keyPrefix);
+                if (sync != null && seq > sync.base) {
+                    sync.received.increment();
+                }
+            }
+        });
+    }
+
+    //重建时记下的广播序号 以及之后收到的序号更大的广播数
+    private static class BloomSync {
+        private final Function<Object, List<Object>> nextPage;
+        private volatile long base;
+        private final LongAdder received = new LongAdder();
+        private volatile boolean lagging;
+
+        private BloomSync(Function<Object, List<Object>> nextPage) {
+            this.nextPage = nextPage;
+        }
+
+        private void reset(long base) {
+            this.base = base;
+            received.reset();
+            lagging = false;
+        }
+    }
+
+    //布隆过滤器判定一定不存在时返回false
+    private boolean mightExist(String keyPrefix, Object id) {
+        BloomFilter filter = bloomFilters.get(keyPrefix);
+        if (filter == null || !filter.isReady()) {
+            return true;
+        }
+        if (filter.mightContain(String.valueOf(id))) {
+            filter.recordPassed();
+            return true;
+        }
+        filter.recordRejected();
+        return false;
+    }
+
+    //布隆过滤器放行但数据库不存在 记为一次误判
+    private void recordFalsePositive(String keyPrefix) {
+        BloomFilter filter = bloomFilters.get(keyPrefix);
+        if (filter != null && filter.isReady()) {
+            filter.recordFalsePositive();
+        }
     }
 
     /*
@@ -54,88 +563,452 @@ public class CacheClient {
      * @return R
      */
     public <R, ID> R queryWithPassThrough(String keyPrefix, ID id, Class<R> type, Function<ID, R> dbFallBack, Long time, TimeUnit unit) {
-        String key = keyPrefix + id;
-        //从redis查询缓存
-        String json = stringRedisTemplate.opsForValue().get(key);
+        //布隆过滤器判定不存在 直接返回
+        if (!mightExist(keyPrefix, id)) {
+            return null;
+        }
+        String key = key(keyPrefix, id);
+        //查询本地缓存和redis
+        Object cached = lookup(key, type);
+        recordLookup(keyPrefix, cached);
+        if (cached != null) {
+            return unwrap(cached, type);
+        }
+        //不存在 查询数据库 失败时返回旧副本
+        R r;
+        try {
+            r = loadFromDb(keyPrefix, id, dbFallBack);
+        } catch (CacheLoadException e) {
+            return serveStale(keyPrefix, id, type, dbFallBack, time, unit, e);
+        }
+        if (r == null) {
+            recordFalsePositive(keyPrefix);
+        }
+        //写入redis 返回前端
+        writeBack(key, r, time, unit);
+        return r;
+    }
 
-        //判断是否存在
-        if (StrUtil.isNotBlank(json)) {
-            //存在 返回
-            return JSONUtil.toBean(json, type);
+    /*
+     *批量缓存穿透
+     * 一次MGET查询全部id 未命中的id一次性交给dbFallBack(IN查询) 写回redis使用pipeline
+     * @author RenBoQing
+     * @param keyPrefix
+     * @param ids
+     * @param type
+     * @param dbFallBack 传入未命中的id 返回id到数据的映射 查不到的id不放入map
+     * @param time
+     * @param unit
+     * @return id到数据的映射 不存在的id不在结果中
+     */
+    public <R, ID> Map<ID, R> queryBatchWithPassThrough(String keyPrefix, Collection<ID> ids, Class<R> type,
+                                                         Function<Collection<ID>, Map<ID, R>> dbFallBack, Long time, TimeUnit unit) {
+        Map<ID, R> result = new HashMap<>(ids.size());
+        //先过滤布隆过滤器和本地缓存
+        List<ID> remoteIds = new ArrayList<>();
+        for (ID id : new LinkedHashSet<>(ids)) {
+            if (!mightExist(keyPrefix, id)) {
+                continue;
+            }
+            Object local = lookupLocal(key(keyPrefix, id), type);
+            if (local == null) {
+                remoteIds.add(id);
+            } else {
+                recordLookup(keyPrefix, local);
+                if (local != NULL_VALUE) {
+                    result.put(id, type.cast(local));
+                }
+            }
         }
-        //判断命中的是否为空值
-        if (json != null) {
+        if (remoteIds.isEmpty()) {
+            return result;
+        }
+        //一次MGET
+        List<String> keys = remoteIds.stream().map(id -> key(keyPrefix, id)).collect(Collectors.toList());
+        List<byte[]> values = byteRedisTemplate.opsForValue().multiGet(keys);
+        List<ID> missIds = new ArrayList<>();
+        for (int i = 0; i < remoteIds.size(); i++) {
+            Object cached = decode(keys.get(i), values == null ? null : values.get(i), type);
+            recordLookup(keyPrefix, cached);
+            if (cached == null) {
+                missIds.add(remoteIds.get(i));
+            } else if (cached != NULL_VALUE) {
+                result.put(remoteIds.get(i), type.cast(cached));
+            }
+        }
+        if (missIds.isEmpty()) {
+            return result;
+        }
+        //未命中的一次查询数据库
+        Map<ID, R> loaded = cacheMetrics.rebuild(keyPrefix, () -> dbFallBack.apply(missIds));
+        //pipeline写回 不存在的写入空值
+        byteRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (ID id : missIds) {
+                String key = key(keyPrefix, id);
+                byte[] rawKey = key.getBytes(StandardCharsets.UTF_8);
+                R r = loaded.get(id);
+                if (r == null) {
+                    recordFalsePositive(keyPrefix);
+                    connection.setEx(rawKey, TimeUnit.MINUTES.toSeconds(CACHE_NULL_TTL), new byte[0]);
+                    connection.del(versionKey(key));
+                } else {
+                    byte[] bytes = encode(key, r);
+                    connection.setEx(rawKey, unit.toSeconds(time), bytes);
+                    connection.setEx(versionKey(key), unit.toSeconds(time), versionOf(bytes));
+                    result.put(id, r);
+                }
+                putLocal(key, r);
+            }
+            return null;
+        });
+        return result;
+    }
+
+    /*
+     *缓存击穿 互斥锁 + 进程内合并请求
+     * 同一个key的并发未命中在本进程内共享一次数据库查询 只有一个节点能拿到redis锁
+     * 没拿到锁的节点等待缓存写入的广播 而不是休眠轮询
+     * @author RenBoQing
+     * @param keyPrefix
+     * @param id
+     * @param type
+     * @param dbFallBack
+     * @param time
+     * @param unit
+     * @return R
+     */
+    public <R, ID> R queryWithMutex(String keyPrefix, ID id, Class<R> type, Function<ID, R> dbFallBack, Long time, TimeUnit unit) {
+        if (!mightExist(keyPrefix, id)) {
             return null;
         }
-        //不存在 查询数据库
-        R r = dbFallBack.apply(id);
+        String key = key(keyPrefix, id);
+        Object cached = lookup(key, type);
+        recordLookup(keyPrefix, cached);
+        if (cached != null) {
+            return unwrap(cached, type);
+        }
+        //同一个key只有第一个线程去加载 其余线程等待同一个future
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> inFlight = inFlightLoads.putIfAbsent(key, future);
+        if (inFlight != null) {
+            try {
+                return unwrap(inFlight.join(), type);
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+        }
+        try {
+            Object value = loadWithMutex(keyPrefix, id, type, dbFallBack, time, unit);
+            if (value == NULL_VALUE) {
+                recordFalsePositive(keyPrefix);
+            }
+            future.complete(value);
+            return unwrap(value, type);
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlightLoads.remove(key, future);
+        }
+    }
+
+    //获取redis锁后重建缓存 返回值或NULL_VALUE
+    private <R, ID> Object loadWithMutex(String keyPrefix, ID id, Class<R> type, Function<ID, R> dbFallBack, Long time, TimeUnit unit) {
+        String key = key(keyPrefix, id);
+        RedisLock lock = redisLockClient.getLock(CACHE_LOCK_KEY + key);
+        boolean contended = false;
+        long deadline = System.currentTimeMillis() + cacheClientProperties.getMutex().getWaitTimeout().toMillis();
+        while (true) {
+            if (lock.tryLock()) {
+                try {
+                    //双重检查 等锁期间其他节点可能已经写入
+                    Object cached = lookup(key, type);
+                    if (cached != null) {
+                        return cached;
+                    }
+                    R r;
+                    try {
+                        r = loadFromDb(keyPrefix, id, dbFallBack);
+                    } catch (CacheLoadException e) {
+                        return serveStale(keyPrefix, id, type, dbFallBack, time, unit, e);
+                    }
+                    writeBack(key, r, time, unit);
+                    return r == null ? NULL_VALUE : r;
+                } finally {
+                    //先唤醒其他节点上等待这个key的线程 再释放锁
+                    //两步都失败也不影响已经查到的值 等待方超时后自行查询
+                    try {
+                        stringRedisTemplate.convertAndSend(CACHE_LOADED_CHANNEL, key);
+                    } catch (RuntimeException e) {
+                        log.warn("重建完成通知失败 key={}", key, e);
+                    }
+                    try {
+                        lock.unlock();
+                    } catch (RuntimeException e) {
+                        //看门狗续期失败时锁可能已经过期 由租期兜底
+                        log.warn("释放重建锁失败 key={}", key, e);
+                    }
+                }
+            }
+            if (!contended) {
+                contended = true;
+                cacheMetrics.lockContention(keyPrefix);
+            }
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                //持锁节点迟迟没有写入 降级为直接查询数据库
+                R r;
+                try {
+                    r = loadFromDb(keyPrefix, id, dbFallBack);
+                } catch (CacheLoadException e) {
+                    return serveStale(keyPrefix, id, type, dbFallBack, time, unit, e);
+                }
+                return r == null ? NULL_VALUE : r;
+            }
+            //其他节点正在重建 先登记等待 再检查一次缓存 避免错过通知
+            CompletableFuture<Void> loaded = remoteLoadWaiters.computeIfAbsent(key, k -> new CompletableFuture<>());
+            Object cached = lookup(key, type);
+            if (cached != null) {
+                return cached;
+            }
+            try {
+                loaded.get(remaining, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException | ExecutionException ignored) {
+                //超时后再尝试获取锁
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            } finally {
+                remoteLoadWaiters.remove(key, loaded);
+            }
+            cached = lookup(key, type);
+            if (cached != null) {
+                return cached;
+            }
+        }
+    }
+
+    /*
+     *概率提前刷新(XFetch)
+     * 缓存中记录上次重建耗时delta 越接近过期时间 读请求越有可能被选中提前重建
+     * 重建越慢 提前量越大 过期时刻不会集中出现重建 热点路径上也不需要分布式锁
+     * 数据存放在keyPrefix+early:下 与其他查询方式直接存实体的key分开 布隆过滤器和指标仍按keyPrefix
+     * @author RenBoQing
+     * @param keyPrefix
+     * @param id
+     * @param type
+     * @param dbFallBack
+     * @param time
+     * @param unit
+     * @return R
+     */
+    public <R, ID> R queryWithEarlyRefresh(String keyPrefix, ID id, Class<R> type, Function<ID, R> dbFallBack, Long time, TimeUnit unit) {
+        if (!mightExist(keyPrefix, id)) {
+            return null;
+        }
+        String key = key(keyPrefix + CACHE_EARLY_REFRESH_SEGMENT, id);
+        //从redis查询缓存
+        byte[] bytes = byteRedisTemplate.opsForValue().get(key);
+        RedisData cached = bytes == null || bytes.length == 0 ? null : cacheCodecs.decodeRedisData(key, bytes, type);
+        if (cached == null) {
+            cacheMetrics.request(keyPrefix, CacheMetrics.MISS);
+        } else if (!shouldRefreshEarly(cached)) {
+            cacheMetrics.request(keyPrefix, cached.getData() == null ? CacheMetrics.NULL_HIT : CacheMetrics.HIT);
+            return type.cast(cached.getData());
+        } else {
+            cacheMetrics.request(keyPrefix, CacheMetrics.EARLY_REFRESH);
+        }
+        //未命中或者被选中提前刷新 当前线程重建
+        long begin = System.currentTimeMillis();
+        R r = cacheMetrics.rebuild(keyPrefix, () -> dbFallBack.apply(id));
+        long delta = System.currentTimeMillis() - begin;
+        RedisData redisData = new RedisData();
+        redisData.setData(r);
+        redisData.setDelta(delta);
         if (r == null) {
-            //不存在 将数据写入redis
-            stringRedisTemplate.opsForValue().set(key, "", CACHE_NULL_TTL, TimeUnit.MINUTES);
+            recordFalsePositive(keyPrefix);
+            redisData.setExpireTime(LocalDateTime.now().plusMinutes(CACHE_NULL_TTL));
+            write(key, redisData, CACHE_NULL_TTL, TimeUnit.MINUTES);
             return null;
         }
-        //存在 写入redis 返回前端
-        this.set(key, r, time, unit);
+        //逻辑过期时间与redis的ttl一致 没人提前刷新时自然过期
+        redisData.setExpireTime(LocalDateTime.now().plusSeconds(unit.toSeconds(time)));
+        write(key, redisData, time, unit);
         return r;
     }
 
-    //缓存线程次
-    private static final ExecutorService CASHCASH_REBUILD_EXCUTOR = Executors.newFixedThreadPool(10);
+    //XFetch判定 now - delta * beta * ln(random) >= expireTime 时提前刷新
+    private boolean shouldRefreshEarly(RedisData redisData) {
+        LocalDateTime expireTime = redisData.getExpireTime();
+        if (expireTime == null) {
+            return true;
+        }
+        long delta = redisData.getDelta() == null ? 0L : redisData.getDelta();
+        double beta = cacheClientProperties.getEarlyRefresh().getBeta();
+        //random取值(0,1] 避免ln(0)
+        double random = 1 - ThreadLocalRandom.current().nextDouble();
+        long gapMillis = (long) (-delta * beta * Math.log(random));
+        return !LocalDateTime.now().plus(gapMillis, ChronoUnit.MILLIS).isBefore(expireTime);
+    }
+
+    //依次查询本地缓存和redis 未命中返回null 命中空值返回NULL_VALUE
+    private <R> Object lookup(String key, Class<R> type) {
+        //先查本地缓存 命中则不访问redis
+        Object local = lookupLocal(key, type);
+        if (local != null) {
+            return local;
+        }
+        //从redis查询缓存
+        return decode(key, byteRedisTemplate.opsForValue().get(key), type);
+    }
+
+    //只查本地缓存 同时记录访问用于热点探测
+    private <R> Object lookupLocal(String key, Class<R> type) {
+        if (hotKeyDetector.record(key)) {
+            Object pinned = hotKeyDetector.getPinned(key);
+            if (pinned == NULL_VALUE || type.isInstance(pinned)) {
+                return pinned;
+            }
+        }
+        if (localCache == null) {
+            return null;
+        }
+        Object local = localCache.get(key, false);
+        return local == NULL_VALUE || type.isInstance(local) ? local : null;
+    }
 
+    //解析redis中的值 并写入本地缓存 无法解析的按未命中处理
+    private <R> Object decode(String key, byte[] bytes, Class<R> type) {
+        //判断是否存在
+        if (bytes == null) {
+            return null;
+        }
+        //判断命中的是否为空值
+        if (bytes.length == 0) {
+            putLocal(key, null);
+            return NULL_VALUE;
+        }
+        R r = cacheCodecs.decode(key, bytes, type);
+        if (r != null) {
+            putLocal(key, r);
+        }
+        return r;
+    }
+
+    //数据库查询结果写回redis 不存在时写入空值 配置了stale-if-error的前缀同时写入旧副本
+    private void writeBack(String key, Object value, Long time, TimeUnit unit) {
+        CacheClientProperties.StalePolicy policy = cacheLoadGuard.policy(CacheMetrics.prefixOf(key));
+        if (value == null) {
+            //不存在的数据没有版本号 不返回ETag
+            byteRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                connection.setEx(key.getBytes(StandardCharsets.UTF_8), TimeUnit.MINUTES.toSeconds(CACHE_NULL_TTL), new byte[0]);
+                connection.del(versionKey(key));
+                return null;
+            });
+        } else if (policy == null) {
+            write(key, value, time, unit);
+        } else {
+            byte[] bytes = encode(key, value);
+            byteRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                connection.setEx(key.getBytes(StandardCharsets.UTF_8), unit.toSeconds(time), bytes);
+                connection.setEx(versionKey(key), unit.toSeconds(time), versionOf(bytes));
+                connection.setEx((CACHE_STALE_KEY + key).getBytes(StandardCharsets.UTF_8),
+                        policy.getStaleTtl().getSeconds(), bytes);
+                return null;
+            });
+        }
+        putLocal(key, value);
+    }
+
+    //查询数据库 配置了stale-if-error的前缀带超时和熔断
+    private <R, ID> R loadFromDb(String keyPrefix, ID id, Function<ID, R> dbFallBack) {
+        return cacheMetrics.rebuild(keyPrefix, () -> cacheLoadGuard.call(keyPrefix, () -> dbFallBack.apply(id)));
+    }
+
+    /*
+     *查询数据库失败 返回旧副本 并在后台重试
+     * 没有旧副本时抛出原异常
+     */
+    private <R, ID> R serveStale(String keyPrefix, ID id, Class<R> type, Function<ID, R> dbFallBack,
+                                 Long time, TimeUnit unit, CacheLoadException cause) {
+        String key = key(keyPrefix, id);
+        byte[] bytes = byteRedisTemplate.opsForValue().get(CACHE_STALE_KEY + key);
+        R stale = bytes == null || bytes.length == 0 ? null : cacheCodecs.decode(key, bytes, type);
+        if (stale == null) {
+            throw cause;
+        }
+        log.warn("{} 返回旧副本: {}", key, cause.getMessage());
+        cacheMetrics.request(keyPrefix, CacheMetrics.STALE);
+        //后台重试 熔断期间直接失败 下次请求再提交
+        cacheRebuildExecutor.submit(key, () -> {
+            try {
+                writeBack(key, loadFromDb(keyPrefix, id, dbFallBack), time, unit);
+            } catch (CacheLoadException e) {
+                log.debug("{} 后台重试失败: {}", key, e.getMessage());
+            }
+        });
+        return stale;
+    }
+
+    //按查询结果记录命中/未命中/空值命中
+    private void recordLookup(String keyPrefix, Object cached) {
+        cacheMetrics.request(keyPrefix, cached == null ? CacheMetrics.MISS
+                : cached == NULL_VALUE ? CacheMetrics.NULL_HIT : CacheMetrics.HIT);
+    }
+
+    private <R> R unwrap(Object value, Class<R> type) {
+        return value == NULL_VALUE ? null : type.cast(value);
+    }
+
+    //数据存放在keyPrefix+logical:下 与直接存实体的key分开
     public <R, ID> R queryWithLogicalExpire(String keyPrefix, ID id, Class<R> type, Function<ID, R> dbFallBack, Long time, TimeUnit unit) {
-        String key = keyPrefix + id;
+        String key = key(keyPrefix + CACHE_LOGICAL_EXPIRE_SEGMENT, id);
         //从redis查询缓存
-        String json = stringRedisTemplate.opsForValue().get(key);
+        byte[] bytes = byteRedisTemplate.opsForValue().get(key);
         //判断是否存在
-        if (StrUtil.isBlank(json)) {
+        if (bytes == null || bytes.length == 0) {
             //不存在 返回
+            cacheMetrics.request(keyPrefix, CacheMetrics.MISS);
+            return null;
+        }
+        //4.命中  反序列化
+        RedisData redisData = cacheCodecs.decodeRedisData(key, bytes, type);
+        if (redisData == null) {
+            cacheMetrics.request(keyPrefix, CacheMetrics.MISS);
             return null;
         }
-        //4.命中  将json反序列化
-        RedisData redisData = JSONUtil.toBean(json, RedisData.class);
-        R r = JSONUtil.toBean((JSONObject) redisData.getData(), type);
+        R r = type.cast(redisData.getData());
         LocalDateTime expireTime = redisData.getExpireTime();
         //5. 判断是否过期
         if (expireTime.isAfter(LocalDateTime.now())) {
             //5.2 返回数据
+            cacheMetrics.request(keyPrefix, CacheMetrics.HIT);
             return r;
         }
+        //已过期 返回旧数据
+        cacheMetrics.request(keyPrefix, CacheMetrics.STALE);
         //5.1 过期 缓存重建
         //6缓存重建
-        //6.1获取互斥锁
-        String lockKey = LOCK_SHOP_KEY + id;
-        boolean isLock = tryLock(lockKey);
-        //6.2 判断互斥锁是否成功
-        if (isLock) {
-            //6.3成功 开启独立线程 实现缓存重建
-            CASHCASH_REBUILD_EXCUTOR.submit(() -> {
-                try {
-                    R apply = dbFallBack.apply(id);
-                    //   写入redis
-                    this.setWithLogicalExpire(key, apply, time, unit);
-                } catch (Exception e) {
-                    throw new RuntimeException(e);
-                } finally {
-                    //   释放锁
-                    unLock(lockKey);
-                }
-
-            });
-        }
+        //6.1提交到重建线程池 同一个key在本节点只会排队一次
+        cacheRebuildExecutor.submit(key, () -> {
+            //6.2获取互斥锁 其他节点正在重建时放弃
+            RedisLock lock = redisLockClient.getLock(CACHE_LOCK_KEY + key);
+            if (!lock.tryLock()) {
+                cacheMetrics.lockContention(keyPrefix);
+                return;
+            }
+            try {
+                R apply = cacheMetrics.rebuild(keyPrefix, () -> dbFallBack.apply(id));
+                //   写入redis
+                writeWithLogicalExpire(key, apply, time, unit);
+            } finally {
+                //   释放锁
+                lock.unlock();
+            }
+        });
         //6.4返回过期的数据
 
         return r;
     }
 
-    //互斥锁
-    private boolean tryLock(String key) {
-        Boolean flag = stringRedisTemplate.opsForValue().setIfAbsent(key, "1", 10, TimeUnit.MINUTES);
-        return BooleanUtil.isTrue(flag);
-    }
-
-    //互斥锁
-    private void unLock(String key) {
-        stringRedisTemplate.delete(key);
-    }
-
 }
@@ -0,0 +1,37 @@
+package com.hmdp.utils;
+
+import java.util.List;
+
+/**
+ * @author RenBoQing
+ * @date 2026年10月18日 13:40
+ * @Description 缓存值编解码器 实现类注册为spring bean即可被CacheCodecs发现
+ */
+public interface CacheCodec {
+
+    /**
+     * 编解码器名称 用于按key前缀配置
+     */
+    String name();
+
+    /**
+     * 是否能编码该值 不支持时退回默认编解码器
+     */
+    boolean supports(Object value);
+
+    /**
+     * 根据头部判断是否由该编解码器写入
+     */
+    boolean canDecode(byte[] bytes);
+
+    byte[] encode(Object value);
+
+    <T> T decode(byte[] bytes, Class<T> type);
+
+    <T> List<T> decodeList(byte[] bytes, Class<T> elementType);
+
+    /**
+     * 解析逻辑过期的包装 data会被转换为dataType
+     */
+    RedisData decodeRedisData(byte[] bytes, Class<?> dataType);
+}
@@ -0,0 +1,111 @@
+package com.hmdp.utils;
+
+import com.hmdp.config.CacheClientProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.annotation.AnnotationAwareOrderComparator;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author RenBoQing
+ * @date 2026年10月18日 14:20
+ * @Description 按key前缀选择编码方式 解码时根据头部自动识别 不同编码的缓存可以共存
+ * 编码后的值较大时再经过CacheCompressor压缩
+ */
+@Slf4j
+@Component
+public class CacheCodecs {
+    //按@Order排序 json排在最后兜底
+    @Resource
+    private List<CacheCodec> codecs;
+    @Resource
+    private CacheClientProperties cacheClientProperties;
+    @Resource
+    private CacheCompressor cacheCompressor;
+
+    private CacheCodec defaultCodec;
+
+    //按前缀长度倒序 优先匹配最长前缀
+    private final List<Map.Entry<String, CacheCodec>> prefixCodecs = new ArrayList<>();
+
+    @PostConstruct
+    public void init() {
+        AnnotationAwareOrderComparator.sort(codecs);
+        CacheClientProperties.Codec codec = cacheClientProperties.getCodec();
+        defaultCodec = byName(codec.getDefaultCodec());
+        codec.getPrefixes().forEach((prefix, name) ->
+                prefixCodecs.add(new AbstractMap.SimpleImmutableEntry<>(prefix, byName(name))));
+        prefixCodecs.sort(Comparator.comparingInt((Map.Entry<String, CacheCodec> e) -> e.getKey().length()).reversed());
+    }
+
+    private CacheCodec byName(String name) {
+        return codecs.stream()
+                .filter(codec -> codec.name().equals(name))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("未知的缓存编码: " + name));
+    }
+
+    private CacheCodec codecFor(String key) {
+        for (Map.Entry<String, CacheCodec> entry : prefixCodecs) {
+            if (key.startsWith(entry.getKey())) {
+                return entry.getValue();
+            }
+        }
+        return defaultCodec;
+    }
+
+    private CacheCodec detect(byte[] bytes) {
+        for (CacheCodec codec : codecs) {
+            if (codec.canDecode(bytes)) {
+                return codec;
+            }
+        }
+        return defaultCodec;
+    }
+
+    public byte[] encode(String key, Object value) {
+        CacheCodec codec = codecFor(key);
+        if (!codec.supports(value)) {
+            codec = defaultCodec;
+        }
+        return cacheCompressor.compress(key, codec.encode(value));
+    }
+
+    //无法解析时返回null 调用方按未命中处理 由新数据覆盖
+    public <T> T decode(String key, byte[] raw, Class<T> type) {
+        try {
+            byte[] bytes = cacheCompressor.decompress(key, raw);
+            return detect(bytes).decode(bytes, type);
+        } catch (RuntimeException e) {
+            log.warn("缓存解码失败 按未命中处理: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    public <T> List<T> decodeList(String key, byte[] raw, Class<T> elementType) {
+        try {
+            byte[] bytes = cacheCompressor.decompress(key, raw);
+            return detect(bytes).decodeList(bytes, elementType);
+        } catch (RuntimeException e) {
+            log.warn("缓存解码失败 按未命中处理: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    public RedisData decodeRedisData(String key, byte[] raw, Class<?> dataType) {
+        try {
+            byte[] bytes = cacheCompressor.decompress(key, raw);
+            return detect(bytes).decodeRedisData(bytes, dataType);
+        } catch (RuntimeException e) {
+            log.warn("缓存解码失败 按未命中处理: {}", e.getMessage());
+            return null;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.hmdp.utils;
+
+import com.hmdp.config.CacheClientProperties;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4SafeDecompressor;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author RenBoQing
+ * @date 2026年10月18日 17:40
+ * @Description 缓存值压缩
+ * 编码后超过阈值的值使用lz4压缩 格式: MAGIC | 原始长度(4字节) | 压缩数据
+ * 解码时根据MAGIC判断 压缩和未压缩的缓存可以共存 压缩后没有变小的值按原样存储
+ */
+@Component
+public class CacheCompressor {
+
+    //json不会以该字节开头 也不同于二进制编码的MAGIC
+    public static final byte MAGIC = (byte) 0xC4;
+
+    private static final int HEADER_LENGTH = 5;
+
+    private static final LZ4Compressor COMPRESSOR = LZ4Factory.fastestInstance().fastCompressor();
+    private static final LZ4SafeDecompressor DECOMPRESSOR = LZ4Factory.fastestInstance().safeDecompressor();
+
+    @Resource
+    private CacheClientProperties cacheClientProperties;
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    private final ConcurrentHashMap<String, DistributionSummary> ratios = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Timer> timers = new ConcurrentHashMap<>();
+
+    public byte[] compress(String key, byte[] bytes) {
+        CacheClientProperties.Compression compression = cacheClientProperties.getCompression();
+        if (!compression.isEnabled() || bytes.length < compression.getThreshold()) {
+            return bytes;
+        }
+        String keyPrefix = CacheMetrics.prefixOf(key);
+        long begin = System.nanoTime();
+        byte[] compressed = new byte[HEADER_LENGTH + COMPRESSOR.maxCompressedLength(bytes.length)];
+        int length = COMPRESSOR.compress(bytes, 0, bytes.length, compressed, HEADER_LENGTH);
+        timer(keyPrefix, "compress").record(System.nanoTime() - begin, TimeUnit.NANOSECONDS);
+        ratio(keyPrefix).record((double) bytes.length / (HEADER_LENGTH + length));
+        if (HEADER_LENGTH + length >= bytes.length) {
+            return bytes;
+        }
+        ByteBuffer.wrap(compressed).put(MAGIC).putInt(bytes.length);
+        byte[] result = new byte[HEADER_LENGTH + length];
+        System.arraycopy(compressed, 0, result, 0, result.length);
+        return result;
+    }
+
+    //未压缩的值原样返回
+    public byte[] decompress(String key, byte[] bytes) {
+        if (bytes.length < HEADER_LENGTH || bytes[0] != MAGIC) {
+            return bytes;
+        }
+        long begin = System.nanoTime();
+        int originalLength = ByteBuffer.wrap(bytes, 1, 4).getInt();
+        byte[] original = new byte[originalLength];
+        DECOMPRESSOR.decompress(bytes, HEADER_LENGTH, bytes.length - HEADER_LENGTH, original, 0, originalLength);
+        timer(CacheMetrics.prefixOf(key), "decompress").record(System.nanoTime() - begin, TimeUnit.NANOSECONDS);
+        return original;
+    }
+
+    //原始大小/压缩后大小
+    private DistributionSummary ratio(String keyPrefix) {
+        return ratios.computeIfAbsent(keyPrefix, k -> DistributionSummary.builder("cache.compression.ratio")
+                .tag("prefix", keyPrefix)
+                .register(meterRegistry));
+    }
+
+    private Timer timer(String keyPrefix, String operation) {
+        return timers.computeIfAbsent(keyPrefix + '|' + operation, k -> Timer.builder("cache.compression")
+                .tag("prefix", keyPrefix)
+                .tag("operation", operation)
+                .register(meterRegistry));
+    }
+}
@@ -0,0 +1,151 @@
+package com.hmdp.utils;
+
+import com.hmdp.config.CacheClientProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author RenBoQing
+ * @date 2026年10月18日 15:48
+ * @Description 缓存失效
+ * 事务中登记的key在提交后才删除 避免提交前被并发读请求用旧数据回填
+ * 一个事务或一个时间窗口内的key合并为一次pipeline UNLINK 可选延迟双删
+ */
+@Slf4j
+@Component
+public class CacheInvalidator {
+    @Resource
+    private CacheClient cacheClient;
+    @Resource
+    private CacheClientProperties cacheClientProperties;
+
+    //等待合并删除的key
+    private final ConcurrentLinkedQueue<String> pendingKeys = new ConcurrentLinkedQueue<>();
+
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    public void init() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "cache-invalidator");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long window = Math.max(1L, cacheClientProperties.getInvalidation().getWindow().toMillis());
+        scheduler.scheduleWithFixedDelay(this::flushQuietly, window, window, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        scheduler.shutdown();
+        flushQuietly();
+    }
+
+    public void invalidate(String keyPrefix, Object id) {
+        invalidate(Collections.singletonList(keyPrefix + id));
+    }
+
+    //在事务中调用时 提交后才删除 回滚则不删除
+    public void invalidate(Collection<String> keys) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            enqueue(keys);
+            return;
+        }
+        @SuppressWarnings("unchecked")
+        Set<String> transactionKeys = (Set<String>) TransactionSynchronizationManager.getResource(this);
+        if (transactionKeys == null) {
+            Set<String> keysOfTransaction = new LinkedHashSet<>();
+            TransactionSynchronizationManager.bindResource(this, keysOfTransaction);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    enqueue(keysOfTransaction);
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(CacheInvalidator.this);
+                }
+            });
+            transactionKeys = keysOfTransaction;
+        }
+        transactionKeys.addAll(keys);
+    }
+
+    /*
+     *整体失效一个命名空间 在事务中调用时提交后才提升代数
+     * @param keyPrefix 开启了命名空间的前缀
+     */
+    public void invalidateNamespace(String keyPrefix) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            bumpQuietly(keyPrefix);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                bumpQuietly(keyPrefix);
+            }
+        });
+    }
+
+    //失败时旧代数的缓存由ttl兜底过期
+    private void bumpQuietly(String keyPrefix) {
+        try {
+            cacheClient.bumpNamespace(keyPrefix);
+        } catch (RuntimeException e) {
+            log.error("提升命名空间代数失败 prefix={}", keyPrefix, e);
+        }
+    }
+
+    private void enqueue(Collection<String> keys) {
+        pendingKeys.addAll(keys);
+        long delay = cacheClientProperties.getInvalidation().getDoubleDeleteDelay().toMillis();
+        if (delay > 0) {
+            //延迟双删 清理删除后被并发读请求回填的旧数据
+            Set<String> again = new LinkedHashSet<>(keys);
+            scheduler.schedule(() -> pendingKeys.addAll(again), delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception e) {
+            log.error("批量删除缓存失败", e);
+        }
+    }
+
+    //取出窗口内的全部key 去重后一次删除
+    private void flush() {
+        Set<String> keys = new LinkedHashSet<>();
+        String key;
+        while ((key = pendingKeys.poll()) != null) {
+            keys.add(key);
+        }
+        if (keys.isEmpty()) {
+            return;
+        }
+        try {
+            cacheClient.deleteBatch(keys);
+        } catch (RuntimeException e) {
+            //删除失败 放回队列下个窗口重试
+            pendingKeys.addAll(keys);
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.hmdp.utils;
+
+/**
+ * @author RenBoQing
+ * @date 2026年10月18日 19:32
+ * @Description 缓存未命中后查询数据库失败 超时/异常/熔断/线程池已满
+ */
+public class CacheLoadException extends RuntimeException {
+    public CacheLoadException(String message) {
+        super(message);
+    }
+
+    public CacheLoadException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
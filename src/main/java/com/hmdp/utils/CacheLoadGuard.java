@@ -0,0 +1,121 @@
+package com.hmdp.utils;
+
+import com.hmdp.config.CacheClientProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * @author RenBoQing
+ * @date 2026年10月18日 19:35
+ * @Description 回源数据库的保护
+ * 配置了stale-if-error的前缀 在独立的有界线程池中查询数据库 超时或异常时抛出CacheLoadException
+ * 由CacheClient返回旧副本 每个前缀一个熔断器 数据库持续失败时不再回源
+ * 未配置的前缀在当前线程直接查询
+ */
+@Component
+public class CacheLoadGuard {
+    @Resource
+    private CacheClientProperties cacheClientProperties;
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    private ThreadPoolExecutor executor;
+
+    private final ConcurrentHashMap<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Counter> failureCounters = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        CacheClientProperties.StaleIfError staleIfError = cacheClientProperties.getStaleIfError();
+        AtomicInteger threadNumber = new AtomicInteger();
+        executor = new ThreadPoolExecutor(staleIfError.getPoolSize(), staleIfError.getPoolSize(), 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(staleIfError.getQueueCapacity()),
+                r -> {
+                    Thread thread = new Thread(r, "cache-db-load-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        staleIfError.getPrefixes().forEach((keyPrefix, policy) -> {
+            CircuitBreaker breaker = new CircuitBreaker(policy.getFailureThreshold(), policy.getOpenDuration().toMillis());
+            breakers.put(keyPrefix, breaker);
+            Gauge.builder("cache.load.breaker", breaker, b -> b.getState().ordinal())
+                    .tag("prefix", keyPrefix)
+                    .description("0 closed, 1 open, 2 half open")
+                    .register(meterRegistry);
+        });
+    }
+
+    @PreDestroy
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    //前缀的stale-if-error配置 未配置返回null
+    public CacheClientProperties.StalePolicy policy(String keyPrefix) {
+        return cacheClientProperties.getStaleIfError().getPrefixes().get(keyPrefix);
+    }
+
+    public <R> R call(String keyPrefix, Supplier<R> loader) {
+        CacheClientProperties.StalePolicy policy = policy(keyPrefix);
+        CircuitBreaker breaker = breakers.get(keyPrefix);
+        if (policy == null || breaker == null) {
+            return loader.get();
+        }
+        if (!breaker.allowRequest()) {
+            failure(keyPrefix, "open");
+            throw new CacheLoadException("数据库查询已熔断 prefix=" + keyPrefix);
+        }
+        Future<R> future;
+        try {
+            future = executor.submit(loader::get);
+        } catch (RejectedExecutionException e) {
+            breaker.onFailure();
+            failure(keyPrefix, "rejected");
+            throw new CacheLoadException("数据库查询线程池已满 prefix=" + keyPrefix, e);
+        }
+        try {
+            R r = future.get(policy.getDbTimeout().toMillis(), TimeUnit.MILLISECONDS);
+            breaker.onSuccess();
+            return r;
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            breaker.onFailure();
+            failure(keyPrefix, "timeout");
+            throw new CacheLoadException("数据库查询超时 prefix=" + keyPrefix, e);
+        } catch (ExecutionException e) {
+            breaker.onFailure();
+            failure(keyPrefix, "error");
+            throw new CacheLoadException("数据库查询失败 prefix=" + keyPrefix, e.getCause());
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            //试探请求必须有结果 否则熔断器停在半开
+            breaker.onFailure();
+            Thread.currentThread().interrupt();
+            throw new CacheLoadException("数据库查询被中断 prefix=" + keyPrefix, e);
+        }
+    }
+
+    private void failure(String keyPrefix, String reason) {
+        failureCounters.computeIfAbsent(keyPrefix + '|' + reason, k -> Counter.builder("cache.load.failures")
+                .tag("prefix", keyPrefix)
+                .tag("reason", reason)
+                .register(meterRegistry)).increment();
+    }
+}
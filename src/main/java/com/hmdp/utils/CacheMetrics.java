@@ -0,0 +1,90 @@
+package com.hmdp.utils;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * @author RenBoQing
+ * @date 2026年10月18日 16:40
+ * @Description 缓存指标 按key前缀统计 通过 /actuator/metrics 查看
+ * cache.requests          result=hit/miss/null_hit/stale/early_refresh
+ * cache.lock.contention   获取重建锁失败的次数
+ * cache.rebuild           查询数据库重建缓存的次数和耗时分布
+ * cache.value.size        写入redis的编码后字节数分布
+ */
+@Component
+public class CacheMetrics {
+    public static final String HIT = "hit";
+    public static final String MISS = "miss";
+    public static final String NULL_HIT = "null_hit";
+    public static final String STALE = "stale";
+    public static final String EARLY_REFRESH = "early_refresh";
+
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    //每个前缀的meter 避免每次都在registry中查找
+    private final ConcurrentHashMap<String, Counter> requestCounters = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Counter> contentionCounters = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Timer> rebuildTimers = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, DistributionSummary> sizeSummaries = new ConcurrentHashMap<>();
+
+    //key去掉最后一段作为前缀 cache:shop:1 -> cache:shop:
+    public static String prefixOf(String key) {
+        int index = key.lastIndexOf(':');
+        return index < 0 ? key : key.substring(0, index + 1);
+    }
+
+    public void request(String keyPrefix, String result) {
+        request(keyPrefix, result, 1);
+    }
+
+    public void request(String keyPrefix, String result, int count) {
+        if (count > 0) {
+            requestCounters.computeIfAbsent(keyPrefix + '|' + result, k -> Counter.builder("cache.requests")
+                    .tag("prefix", keyPrefix)
+                    .tag("result", result)
+                    .register(meterRegistry)).increment(count);
+        }
+    }
+
+    public void lockContention(String keyPrefix) {
+        contentionCounters.computeIfAbsent(keyPrefix, k -> Counter.builder("cache.lock.contention")
+                .tag("prefix", keyPrefix)
+                .register(meterRegistry)).increment();
+    }
+
+    //计时执行一次重建
+    public <T> T rebuild(String keyPrefix, Supplier<T> loader) {
+        long begin = System.nanoTime();
+        try {
+            return loader.get();
+        } finally {
+            rebuildTimer(keyPrefix).record(System.nanoTime() - begin, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    public void valueSize(String key, int bytes) {
+        String keyPrefix = prefixOf(key);
+        sizeSummaries.computeIfAbsent(keyPrefix, k -> DistributionSummary.builder("cache.value.size")
+                .baseUnit("bytes")
+                .tag("prefix", keyPrefix)
+                .publishPercentileHistogram()
+                .register(meterRegistry)).record(bytes);
+    }
+
+    private Timer rebuildTimer(String keyPrefix) {
+        return rebuildTimers.computeIfAbsent(keyPrefix, k -> Timer.builder("cache.rebuild")
+                .tag("prefix", keyPrefix)
+                .publishPercentileHistogram()
+                .register(meterRegistry));
+    }
+}
@@ -0,0 +1,117 @@
+package com.hmdp.utils;
+
+import com.hmdp.config.CacheClientProperties;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author RenBoQing
+ * @date 2026年10月18日 16:55
+ * @Description 缓存异步重建线程池
+ * 有界队列 同一个key排队中或执行中时不重复提交 队列满时直接丢弃
+ * 被丢弃的key调用方继续返回旧数据 下次读到过期数据时会再次提交
+ */
+@Slf4j
+@Component
+public class CacheRebuildExecutor {
+    @Resource
+    private CacheClientProperties cacheClientProperties;
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    private ThreadPoolExecutor executor;
+
+    //排队中或执行中的key
+    private final ConcurrentHashMap<String, Boolean> pendingKeys = new ConcurrentHashMap<>();
+
+    //同一个key已在重建 被合并的提交
+    private final LongAdder deduplicated = new LongAdder();
+    //队列已满 被丢弃的提交
+    private final LongAdder rejected = new LongAdder();
+
+    private Timer waitTimer;
+    private Timer runTimer;
+
+    @PostConstruct
+    public void init() {
+        CacheClientProperties.Rebuild rebuild = cacheClientProperties.getRebuild();
+        AtomicInteger threadNumber = new AtomicInteger();
+        executor = new ThreadPoolExecutor(rebuild.getPoolSize(), rebuild.getPoolSize(), 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(rebuild.getQueueCapacity()),
+                r -> {
+                    Thread thread = new Thread(r, "cache-rebuild-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        waitTimer = Timer.builder("cache.rebuild.task").tag("phase", "wait")
+                .publishPercentileHistogram().register(meterRegistry);
+        runTimer = Timer.builder("cache.rebuild.task").tag("phase", "run")
+                .publishPercentileHistogram().register(meterRegistry);
+        Gauge.builder("cache.rebuild.queue", executor, e -> e.getQueue().size()).register(meterRegistry);
+        Gauge.builder("cache.rebuild.active", executor, ThreadPoolExecutor::getActiveCount).register(meterRegistry);
+        FunctionCounter.builder("cache.rebuild.submissions", deduplicated, LongAdder::sum)
+                .tag("result", "deduplicated").register(meterRegistry);
+        FunctionCounter.builder("cache.rebuild.submissions", rejected, LongAdder::sum)
+                .tag("result", "rejected").register(meterRegistry);
+    }
+
+    //随spring容器关闭 等待已提交的重建完成
+    @PreDestroy
+    public void destroy() throws InterruptedException {
+        executor.shutdown();
+        long timeout = cacheClientProperties.getRebuild().getShutdownTimeout().toMillis();
+        if (!executor.awaitTermination(timeout, TimeUnit.MILLISECONDS)) {
+            log.warn("缓存重建线程池关闭超时 丢弃{}个排队任务", executor.shutdownNow().size());
+        }
+    }
+
+    /*
+     *提交一个key的重建
+     * @param key 缓存key 用于去重
+     * @param task 重建逻辑
+     * @return 是否被接受 key已在重建或队列已满时返回false
+     */
+    public boolean submit(String key, Runnable task) {
+        if (pendingKeys.putIfAbsent(key, Boolean.TRUE) != null) {
+            deduplicated.increment();
+            return false;
+        }
+        long submitTime = System.nanoTime();
+        try {
+            executor.execute(() -> {
+                long startTime = System.nanoTime();
+                waitTimer.record(startTime - submitTime, TimeUnit.NANOSECONDS);
+                try {
+                    task.run();
+                } catch (Exception e) {
+                    log.error("缓存重建失败 key={}", key, e);
+                } finally {
+                    pendingKeys.remove(key);
+                    runTimer.record(System.nanoTime() - startTime, TimeUnit.NANOSECONDS);
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            pendingKeys.remove(key);
+            rejected.increment();
+            log.warn("缓存重建队列已满 丢弃key={}", key);
+            return false;
+        }
+    }
+}
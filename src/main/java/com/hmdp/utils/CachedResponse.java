@@ -0,0 +1,30 @@
+package com.hmdp.utils;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author RenBoQing
+ * @date 2026年10月18日 18:30
+ * @Description 缓存GET接口序列化后的响应体
+ * 缓存key为 CACHE_RESPONSE_KEY + keyPrefix + 路径变量 与实体缓存一起失效
+ * 命中时由 ResponseCacheInterceptor 直接写出字节 不进入controller
+ */
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface CachedResponse {
+    //对应实体缓存的前缀
+    String keyPrefix();
+
+    //路径变量名 其值拼接在keyPrefix之后
+    String idVariable() default "id";
+
+    long ttl() default 30;
+
+    TimeUnit unit() default TimeUnit.MINUTES;
+}
@@ -0,0 +1,65 @@
+package com.hmdp.utils;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * @author RenBoQing
+ * @date 2026年10月18日 19:30
+ * @Description 熔断器
+ * 连续失败达到阈值后打开 打开期间拒绝所有请求 经过openMillis后放行一个试探请求
+ * 试探成功则关闭 失败则重新打开 试探请求超过openMillis仍未结束时放行新的试探请求
+ */
+public class CircuitBreaker {
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openMillis;
+
+    private final AtomicReference<State> state = new AtomicReference<>(State.CLOSED);
+    //连续失败次数
+    private final AtomicInteger failures = new AtomicInteger();
+    //打开或开始试探的时间
+    private final AtomicLong since = new AtomicLong();
+
+    public CircuitBreaker(int failureThreshold, long openMillis) {
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openMillis = openMillis;
+    }
+
+    //是否放行本次请求 放行后必须调用onSuccess或onFailure
+    public boolean allowRequest() {
+        State current = state.get();
+        if (current == State.CLOSED) {
+            return true;
+        }
+        //打开时间已到 或上一个试探请求没有结束 只有一个线程能成为试探请求
+        long last = since.get();
+        long now = System.currentTimeMillis();
+        if (now - last < openMillis || !since.compareAndSet(last, now)) {
+            return false;
+        }
+        state.set(State.HALF_OPEN);
+        return true;
+    }
+
+    public void onSuccess() {
+        failures.set(0);
+        state.set(State.CLOSED);
+    }
+
+    public void onFailure() {
+        if (state.get() == State.HALF_OPEN || failures.incrementAndGet() >= failureThreshold) {
+            since.set(System.currentTimeMillis());
+            state.set(State.OPEN);
+            failures.set(0);
+        }
+    }
+
+    public State getState() {
+        return state.get();
+    }
+}
@@ -0,0 +1,57 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.lang.hash.MurmurHash;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * @author RenBoQing
+ * @date 2026年10月18日 16:10
+ * @Description 计数草图(count-min sketch) 线程安全
+ * 用固定内存估算每个key的访问次数 估算值只会偏大不会偏小
+ */
+public class CountMinSketch {
+    //depth行 每行width个计数器
+    private final AtomicLongArray counters;
+    private final int depth;
+    private final int width;
+
+    public CountMinSketch(int depth, int width) {
+        this.depth = Math.max(1, depth);
+        this.width = Math.max(16, width);
+        this.counters = new AtomicLongArray(this.depth * this.width);
+    }
+
+    //增加计数 返回增加后的估算值
+    public long add(String key, long weight) {
+        long[] hash = MurmurHash.hash128(key);
+        long estimate = Long.MAX_VALUE;
+        for (int i = 0; i < depth; i++) {
+            estimate = Math.min(estimate, counters.addAndGet(index(hash, i), weight));
+        }
+        return estimate;
+    }
+
+    //估算访问次数 取各行的最小值
+    public long estimate(String key) {
+        long[] hash = MurmurHash.hash128(key);
+        long estimate = Long.MAX_VALUE;
+        for (int i = 0; i < depth; i++) {
+            estimate = Math.min(estimate, counters.get(index(hash, i)));
+        }
+        return estimate;
+    }
+
+    //所有计数减半 让过去的访问逐渐失去权重
+    public void decay() {
+        for (int i = 0; i < counters.length(); i++) {
+            counters.updateAndGet(i, count -> count >>> 1);
+        }
+    }
+
+    //双重哈希 每行使用不同的位置
+    private int index(long[] hash, int row) {
+        long combined = hash[0] + row * hash[1];
+        return row * width + (int) ((combined & Long.MAX_VALUE) % width);
+    }
+}
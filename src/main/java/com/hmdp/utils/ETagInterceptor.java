@@ -0,0 +1,49 @@
+package com.hmdp.utils;
+
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.Map;
+
+/**
+ * @author RenBoQing
+ * @date 2026年10月18日 19:05
+ * @Description 条件GET 版本未变化时返回304 变化时在响应头中带上新的ETag
+ */
+public class ETagInterceptor implements HandlerInterceptor {
+
+    private CacheClient cacheClient;
+
+    public ETagInterceptor(CacheClient cacheClient) {
+        this.cacheClient = cacheClient;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        if (!(handler instanceof HandlerMethod)) {
+            return true;
+        }
+        VersionETag versionETag = ((HandlerMethod) handler).getMethodAnnotation(VersionETag.class);
+        if (versionETag == null) {
+            return true;
+        }
+        @SuppressWarnings("unchecked")
+        Map<String, String> variables = (Map<String, String>) request.getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE);
+        String id = variables == null ? null : variables.get(versionETag.idVariable());
+        if (id == null) {
+            return true;
+        }
+        String key = versionETag.keyPrefix() + id;
+        String version = versionETag.cached() ? cacheClient.version(key) : cacheClient.randomVersion(key);
+        //实体尚未缓存 由本次请求加载 不做条件判断
+        if (version == null) {
+            return true;
+        }
+        //版本一致时设置304 否则写入ETag头后继续处理
+        return !new ServletWebRequest(request, response).checkNotModified(version);
+    }
+}
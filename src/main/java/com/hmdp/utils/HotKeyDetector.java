@@ -0,0 +1,168 @@
+package com.hmdp.utils;
+
+import cn.hutool.cache.Cache;
+import cn.hutool.cache.CacheUtil;
+import com.hmdp.config.CacheClientProperties;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author RenBoQing
+ * @date 2026年10月18日 16:12
+ * @Description 热点key探测
+ * 按采样率把key的访问计入计数草图 估算热度超过阈值的key被标记为热点
+ * 热点key的值固定在进程内短期缓存中 读请求不再访问redis 热度衰减到阈值以下后自动移除
+ * 每个时间窗口结束时所有计数减半 热度反映的是最近几个窗口的访问量
+ */
+@Slf4j
+@Component
+public class HotKeyDetector {
+    @Resource
+    private CacheClientProperties cacheClientProperties;
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    private CountMinSketch sketch;
+
+    //当前的热点key
+    private final ConcurrentHashMap<String, HotKey> hotKeys = new ConcurrentHashMap<>();
+
+    //热点key的值 过期后重新从redis读取
+    private Cache<String, Object> pinned;
+
+    private ScheduledExecutorService scheduler;
+
+    //每次采样计入的次数 采样率的倒数
+    private long weight;
+
+    @PostConstruct
+    public void init() {
+        CacheClientProperties.HotKey hotKey = cacheClientProperties.getHotKey();
+        if (!hotKey.isEnabled()) {
+            return;
+        }
+        sketch = new CountMinSketch(hotKey.getDepth(), hotKey.getWidth());
+        pinned = CacheUtil.newTimedCache(hotKey.getPinTtl().toMillis());
+        weight = Math.max(1L, Math.round(1 / hotKey.getSampleRate()));
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "hot-key-detector");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long window = Math.max(1L, hotKey.getWindow().toMillis());
+        scheduler.scheduleWithFixedDelay(this::rotate, window, window, TimeUnit.MILLISECONDS);
+        Gauge.builder("cache.hotkeys", hotKeys, Map::size).register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+    }
+
+    //记录一次访问 返回key当前是否为热点
+    public boolean record(String key) {
+        if (sketch == null) {
+            return false;
+        }
+        CacheClientProperties.HotKey hotKey = cacheClientProperties.getHotKey();
+        if (hotKey.getSampleRate() < 1 && ThreadLocalRandom.current().nextDouble() >= hotKey.getSampleRate()) {
+            return hotKeys.containsKey(key);
+        }
+        long estimate = sketch.add(key, weight);
+        if (estimate < hotKey.getThreshold()) {
+            return hotKeys.containsKey(key);
+        }
+        HotKey hot = hotKeys.get(key);
+        if (hot != null) {
+            hot.estimate = estimate;
+            return true;
+        }
+        if (hotKeys.size() >= hotKey.getMaxHotKeys()) {
+            return false;
+        }
+        if (hotKeys.putIfAbsent(key, new HotKey(estimate)) == null) {
+            log.info("发现热点key {} 估算热度{}", key, estimate);
+        }
+        return true;
+    }
+
+    //热点key在进程内的值 未固定时返回null
+    public Object getPinned(String key) {
+        return pinned == null ? null : pinned.get(key, false);
+    }
+
+    //key为热点时固定其值
+    public void pin(String key, Object value) {
+        if (pinned != null && hotKeys.containsKey(key)) {
+            pinned.put(key, value);
+        }
+    }
+
+    public void evict(String key) {
+        if (pinned != null) {
+            pinned.remove(key);
+        }
+    }
+
+    //按热度从高到低列出热点key
+    public List<Map<String, Object>> hotKeys() {
+        List<Map.Entry<String, HotKey>> entries = new ArrayList<>(hotKeys.entrySet());
+        entries.sort(Comparator.comparingLong((Map.Entry<String, HotKey> entry) -> entry.getValue().estimate).reversed());
+        List<Map<String, Object>> result = new ArrayList<>(entries.size());
+        for (Map.Entry<String, HotKey> entry : entries) {
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("key", entry.getKey());
+            item.put("estimate", entry.getValue().estimate);
+            item.put("since", entry.getValue().since);
+            item.put("pinned", pinned.containsKey(entry.getKey()));
+            result.add(item);
+        }
+        return result;
+    }
+
+    //窗口结束 移除热度不足的key 然后衰减所有计数
+    private void rotate() {
+        try {
+            long threshold = cacheClientProperties.getHotKey().getThreshold();
+            hotKeys.forEach((key, hot) -> {
+                long estimate = sketch.estimate(key);
+                hot.estimate = estimate;
+                if (estimate < threshold && hotKeys.remove(key, hot)) {
+                    pinned.remove(key);
+                    log.info("热点key {} 已降温", key);
+                }
+            });
+            sketch.decay();
+        } catch (Exception e) {
+            log.error("热点key窗口切换失败", e);
+        }
+    }
+
+    private static class HotKey {
+        //成为热点的时间
+        final long since = System.currentTimeMillis();
+        volatile long estimate;
+
+        HotKey(long estimate) {
+            this.estimate = estimate;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.hmdp.utils;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Repeatable;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author RenBoQing
+ * @date 2026年10月18日 22:55
+ * @Description 接口限流 由 RateLimitInterceptor 在进入controller之前判断
+ * 先过本节点的令牌桶 再过redis中按key计数的GCRA限流 可以在一个方法上声明多条规则
+ */
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Repeatable(RateLimits.class)
+public @interface RateLimit {
+    //规则名 用于redis key和监控指标
+    String name();
+
+    //按什么区分限流对象
+    LimitKey key() default LimitKey.IP;
+
+    //key为PARAM或PATH_VARIABLE时的参数名
+    String variable() default "";
+
+    //每个限流对象在period内允许的请求数 所有节点合计 0表示不做集群限流
+    long permits() default 0;
+
+    long period() default 1;
+
+    TimeUnit unit() default TimeUnit.SECONDS;
+
+    //在平均速率之外允许的突发请求数
+    long burst() default 0;
+
+    //本节点每秒允许的请求数 不区分限流对象 0表示不限制
+    double localRate() default 0;
+
+    enum LimitKey {
+        //整个接口
+        GLOBAL,
+        //登录用户 未登录时按ip
+        USER,
+        IP,
+        //请求参数 如手机号
+        PARAM,
+        //路径变量 如优惠券id
+        PATH_VARIABLE
+    }
+}
@@ -0,0 +1,143 @@
+package com.hmdp.utils;
+
+import cn.hutool.json.JSONUtil;
+import com.hmdp.dto.Result;
+import com.hmdp.dto.UserDTO;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.RATE_LIMIT_KEY;
+
+/**
+ * @author RenBoQing
+ * @date 2026年10月18日 23:05
+ * @Description 按 RateLimit 注解限流 在进入controller之前拒绝
+ * 本节点令牌桶不访问网络 先挡住超出单机容量的请求 通过后再由redis判断该限流对象的集群速率
+ * 被拒绝的请求返回429 redis不可用时放行 只依赖本节点令牌桶
+ * 客户端ip取 getRemoteAddr 经nginx转发时由tomcat按X-Forwarded-For还原 只信任配置的代理地址
+ */
+@Slf4j
+public class RateLimitInterceptor implements HandlerInterceptor {
+    private static final DefaultRedisScript<Long> RATE_LIMIT_SCRIPT = new DefaultRedisScript<>();
+
+    static {
+        RATE_LIMIT_SCRIPT.setLocation(new ClassPathResource("lua/rate_limit.lua"));
+        RATE_LIMIT_SCRIPT.setResultType(Long.class);
+    }
+
+    private static final byte[] REJECTED_BODY = JSONUtil.toJsonStr(Result.fail("请求过于频繁 请稍后重试")).getBytes(StandardCharsets.UTF_8);
+
+    private StringRedisTemplate stringRedisTemplate;
+    private MeterRegistry meterRegistry;
+
+    //每条规则在本节点的令牌桶 key为规则名
+    private final Map<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+
+    public RateLimitInterceptor(StringRedisTemplate stringRedisTemplate, MeterRegistry meterRegistry) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        if (!(handler instanceof HandlerMethod)) {
+            return true;
+        }
+        Set<RateLimit> rules = AnnotatedElementUtils.findMergedRepeatableAnnotations(((HandlerMethod) handler).getMethod(), RateLimit.class);
+        for (RateLimit rule : rules) {
+            long retryMicros = tryAcquire(rule, request);
+            if (retryMicros > 0) {
+                reject(response, retryMicros);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    //通过返回0 拒绝返回建议等待的微秒数
+    private long tryAcquire(RateLimit rule, HttpServletRequest request) {
+        if (rule.localRate() > 0) {
+            TokenBucket bucket = buckets.computeIfAbsent(rule.name(), name -> new TokenBucket(rule.localRate()));
+            if (!bucket.tryAcquire()) {
+                record(rule, "rejected_local");
+                return TimeUnit.SECONDS.toMicros(1);
+            }
+        }
+        if (rule.permits() <= 0) {
+            record(rule, "allowed");
+            return 0;
+        }
+        String target = target(rule, request);
+        if (target == null) {
+            record(rule, "allowed");
+            return 0;
+        }
+        double interval = (double) rule.unit().toMicros(rule.period()) / rule.permits();
+        Long retry;
+        try {
+            retry = stringRedisTemplate.execute(RATE_LIMIT_SCRIPT, Collections.singletonList(RATE_LIMIT_KEY + rule.name() + ":" + target),
+                    String.valueOf((long) Math.ceil(interval)), String.valueOf((long) Math.ceil(interval * rule.burst())));
+        } catch (RuntimeException e) {
+            log.warn("限流判断失败 放行请求 rule={}", rule.name(), e);
+            record(rule, "error");
+            return 0;
+        }
+        if (retry != null && retry > 0) {
+            record(rule, "rejected_remote");
+            return retry;
+        }
+        record(rule, "allowed");
+        return 0;
+    }
+
+    //限流对象 取不到时不做集群限流
+    private String target(RateLimit rule, HttpServletRequest request) {
+        switch (rule.key()) {
+            case GLOBAL:
+                return "all";
+            case USER:
+                UserDTO user = UserHolder.getUser();
+                return user == null ? "ip:" + request.getRemoteAddr() : user.getId().toString();
+            case IP:
+                return request.getRemoteAddr();
+            case PARAM:
+                return request.getParameter(rule.variable());
+            case PATH_VARIABLE:
+                @SuppressWarnings("unchecked")
+                Map<String, String> variables = (Map<String, String>) request.getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE);
+                return variables == null ? null : variables.get(rule.variable());
+            default:
+                return null;
+        }
+    }
+
+    private void record(RateLimit rule, String result) {
+        meterRegistry.counter("ratelimit.requests", "rule", rule.name(), "result", result).increment();
+    }
+
+    private void reject(HttpServletResponse response, long retryMicros) throws Exception {
+        response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        response.setHeader("Retry-After", String.valueOf(Math.max(1L, (long) Math.ceil(retryMicros / 1_000_000D))));
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setContentLength(REJECTED_BODY.length);
+        response.getOutputStream().write(REJECTED_BODY);
+    }
+}
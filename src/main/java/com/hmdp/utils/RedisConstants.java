@@ -10,12 +10,46 @@ public class RedisConstants {
 
     public static final Long CACHE_SHOP_TTL = 30L;
     public static final String CACHE_SHOP_KEY = "cache:shop:";
+    public static final String CACHE_USER_KEY = "cache:user:";
+    public static final Long CACHE_USER_TTL = 30L;
     public static final String CACHE_SHOP_LIST_KEY = "cache:shoplist:";
+    public static final Long CACHE_SHOP_LIST_TTL = 24L;
+    public static final String CACHE_SHOP_TYPE_VERSION_KEY = "cache:shoptype:version";
+    public static final String CACHE_SHOP_TYPE_CHANNEL = "cache:shoptype";
+    public static final String CACHE_INVALIDATE_CHANNEL = "cache:invalidate";
+    public static final String CACHE_LOADED_CHANNEL = "cache:loaded";
+    public static final String CACHE_BLOOM_CHANNEL = "cache:bloom";
+    public static final String CACHE_BLOOM_SEQ_KEY = "cache:bloom:seq:";
+    public static final String CACHE_LOCK_KEY = "lock:";
+    public static final String CACHE_RESPONSE_KEY = "cache:response:";
+    public static final String CACHE_VERSION_KEY = "cache:version:";
+    public static final String CACHE_STALE_KEY = "cache:stale:";
+    //概率提前刷新的RedisData包装放在业务前缀下的独立key 不与直接存实体的key混用 cache:shop:early:1
+    public static final String CACHE_EARLY_REFRESH_SEGMENT = "early:";
+    //逻辑过期的RedisData包装同样放在独立的key cache:shop:logical:1
+    public static final String CACHE_LOGICAL_EXPIRE_SEGMENT = "logical:";
+    public static final String CACHE_NAMESPACE_KEY = "cache:ns:";
+    public static final String CACHE_NAMESPACE_CHANNEL = "cache:ns";
+    public static final Long CACHE_VERSION_TTL = 24L;
+    public static final String CACHE_VOUCHER_SHOP_KEY = "cache:voucher:shop:";
+    public static final String CACHE_SHOP_TYPE_PAGE_KEY = "cache:shoppage:type:";
+    public static final String CACHE_SHOP_NAME_PAGE_KEY = "cache:shoppage:name:";
+    public static final Long CACHE_SHOP_PAGE_TTL = 10L;
 
     public static final String LOCK_SHOP_KEY = "lock:shop:";
     public static final Long LOCK_SHOP_TTL = 10L;
+    public static final String LOCK_RELEASE_CHANNEL = "lock:released";
+
+    public static final String RATE_LIMIT_KEY = "rate:limit:";
 
     public static final String SECKILL_STOCK_KEY = "seckill:stock:";
+    public static final String SECKILL_ORDER_KEY = "seckill:order:";
+    public static final Long SECKILL_RETAIN_TTL = 24L;
+    public static final String SECKILL_ORDER_STREAM = "stream.orders";
+    public static final String SECKILL_ORDER_GROUP = "g1";
+    public static final String SECKILL_SOLD_OUT_CHANNEL = "seckill:soldout";
+    public static final String SECKILL_PREHEAT_KEY = "seckill:preheat";
+    public static final String SECKILL_LOAD_LOCK_KEY = "lock:seckill:load:";
     public static final String BLOG_LIKED_KEY = "blog:liked:";
     public static final String FEED_KEY = "feed:";
     public static final String SHOP_GEO_KEY = "shop:geo:";
@@ -0,0 +1,69 @@
+package com.hmdp.utils;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * @author RenBoQing
+ * @date 2026年10月18日 17:20
+ * @Description 分布式锁 通过 RedisLockClient#getLock 获取
+ * 持有者为加锁的线程 必须由同一个线程解锁
+ */
+public class RedisLock {
+    private final RedisLockClient client;
+    private final String key;
+    private final boolean reentrant;
+
+    RedisLock(RedisLockClient client, String key, boolean reentrant) {
+        this.client = client;
+        this.key = key;
+        this.reentrant = reentrant;
+    }
+
+    //尝试加锁 不等待
+    public boolean tryLock() {
+        return client.tryAcquire(key, client.currentOwner(), reentrant) == null;
+    }
+
+    /*
+     *尝试加锁 锁被占用时等待释放通知 最多等待waitTime
+     * @param waitTime 最长等待时间
+     * @param unit
+     * @return 是否获取到锁
+     */
+    public boolean tryLock(long waitTime, TimeUnit unit) throws InterruptedException {
+        String owner = client.currentOwner();
+        long deadline = System.currentTimeMillis() + unit.toMillis(waitTime);
+        while (true) {
+            //先登记等待 再尝试加锁 避免错过释放通知
+            CompletableFuture<Void> released = client.registerWaiter(key);
+            try {
+                Long ttl = client.tryAcquire(key, owner, reentrant);
+                if (ttl == null) {
+                    return true;
+                }
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+                //ttl为负数时锁刚好过期 立即重试
+                if (ttl > 0) {
+                    released.get(Math.min(remaining, ttl), TimeUnit.MILLISECONDS);
+                }
+            } catch (TimeoutException | ExecutionException ignored) {
+                //等待超时或锁已过期 重新尝试
+            } finally {
+                client.unregisterWaiter(key, released);
+            }
+        }
+    }
+
+    //解锁 不是当前线程持有时抛出异常
+    public void unlock() {
+        if (client.release(key, client.currentOwner()) == null) {
+            throw new IllegalMonitorStateException("锁" + key + "不由当前线程持有");
+        }
+    }
+}
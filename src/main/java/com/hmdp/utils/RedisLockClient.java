@@ -0,0 +1,170 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.lang.UUID;
+import com.hmdp.config.RedisLockProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.LOCK_RELEASE_CHANNEL;
+
+/**
+ * @author RenBoQing
+ * @date 2026年10月18日 17:12
+ * @Description 分布式锁客户端
+ * 锁为redis hash 字段为持有者(节点id:线程id) 值为重入次数 加锁/解锁/续期都通过lua脚本原子执行
+ * 持有期间看门狗定时续期 锁的ttl只需要几秒 释放时通过pub/sub唤醒等待者
+ */
+@Slf4j
+@Component
+public class RedisLockClient {
+    private static final DefaultRedisScript<Long> LOCK_SCRIPT = script("lua/lock.lua");
+    private static final DefaultRedisScript<Long> UNLOCK_SCRIPT = script("lua/unlock.lua");
+    private static final DefaultRedisScript<Long> RENEW_SCRIPT = script("lua/renew.lua");
+
+    //本节点的id 与线程id组成持有者
+    private static final String NODE_ID = UUID.randomUUID().toString(true);
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+    @Resource
+    private RedisLockProperties redisLockProperties;
+
+    //等待锁释放的线程 key为锁的key
+    private final ConcurrentHashMap<String, Waiters> waiters = new ConcurrentHashMap<>();
+
+    //看门狗任务 key为锁的key和持有者
+    private final ConcurrentHashMap<String, ScheduledFuture<?>> renewals = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService watchdog;
+
+    private static DefaultRedisScript<Long> script(String path) {
+        DefaultRedisScript<Long> script = new DefaultRedisScript<>();
+        script.setLocation(new ClassPathResource(path));
+        script.setResultType(Long.class);
+        return script;
+    }
+
+    @PostConstruct
+    public void init() {
+        watchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "redis-lock-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        //锁释放 唤醒本节点等待该锁的线程
+        redisMessageListenerContainer.addMessageListener((message, pattern) -> {
+            Waiters released = waiters.remove(new String(message.getBody(), StandardCharsets.UTF_8));
+            if (released != null) {
+                released.future.complete(null);
+            }
+        }, new ChannelTopic(LOCK_RELEASE_CHANNEL));
+    }
+
+    @PreDestroy
+    public void destroy() {
+        watchdog.shutdownNow();
+    }
+
+    //可重入锁
+    public RedisLock getLock(String key) {
+        return new RedisLock(this, key, true);
+    }
+
+    public RedisLock getLock(String key, boolean reentrant) {
+        return new RedisLock(this, key, reentrant);
+    }
+
+    //当前线程作为持有者的标识
+    String currentOwner() {
+        return NODE_ID + ":" + Thread.currentThread().getId();
+    }
+
+    //尝试加锁 成功返回null 失败返回锁的剩余毫秒数
+    Long tryAcquire(String key, String owner, boolean reentrant) {
+        Long ttl = stringRedisTemplate.execute(LOCK_SCRIPT, Collections.singletonList(key),
+                String.valueOf(leaseMillis()), owner, reentrant ? "1" : "0");
+        if (ttl == null) {
+            scheduleRenewal(key, owner);
+        }
+        return ttl;
+    }
+
+    //释放 不是持有者返回null 重入次数减一返回0 完全释放返回1
+    Long release(String key, String owner) {
+        Long result = stringRedisTemplate.execute(UNLOCK_SCRIPT, Collections.singletonList(key),
+                String.valueOf(leaseMillis()), owner, LOCK_RELEASE_CHANNEL);
+        if (result == null || result == 1L) {
+            cancelRenewal(key, owner);
+        }
+        return result;
+    }
+
+    //登记等待 必须在尝试加锁之前调用 避免错过释放通知
+    //同一个锁的等待者共享一个future 收到释放通知时移除并唤醒
+    CompletableFuture<Void> registerWaiter(String key) {
+        return waiters.compute(key, (k, w) -> {
+            Waiters registered = w == null ? new Waiters() : w;
+            registered.count++;
+            return registered;
+        }).future;
+    }
+
+    //不再等待 每次registerWaiter后都要调用 最后一个等待者离开时移除 不等释放通知
+    void unregisterWaiter(String key, CompletableFuture<Void> future) {
+        waiters.computeIfPresent(key, (k, w) -> w.future != future || --w.count > 0 ? w : null);
+    }
+
+    private long leaseMillis() {
+        return redisLockProperties.getLeaseTime().toMillis();
+    }
+
+    //每隔租期的1/3续期一次 同一个持有者重入时不重复创建
+    private void scheduleRenewal(String key, String owner) {
+        long period = Math.max(1L, leaseMillis() / 3);
+        renewals.computeIfAbsent(key + "|" + owner, k -> watchdog.scheduleAtFixedRate(() -> {
+            try {
+                Long renewed = stringRedisTemplate.execute(RENEW_SCRIPT, Collections.singletonList(key),
+                        String.valueOf(leaseMillis()), owner);
+                if (renewed == null || renewed == 0L) {
+                    log.warn("锁{}已不再由{}持有 停止续期", key, owner);
+                    cancelRenewal(key, owner);
+                }
+            } catch (Exception e) {
+                //redis暂时不可用 下个周期重试
+                log.error("锁{}续期失败", key, e);
+            }
+        }, period, period, TimeUnit.MILLISECONDS));
+    }
+
+    //同一个锁的等待者 count只在ConcurrentHashMap的compute中修改
+    private static class Waiters {
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+        private int count;
+    }
+
+    private void cancelRenewal(String key, String owner) {
+        ScheduledFuture<?> renewal = renewals.remove(key + "|" + owner);
+        if (renewal != null) {
+            renewal.cancel(false);
+        }
+    }
+}
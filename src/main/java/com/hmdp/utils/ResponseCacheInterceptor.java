@@ -0,0 +1,75 @@
+package com.hmdp.utils;
+
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.http.MediaType;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.Map;
+
+import static com.hmdp.utils.RedisConstants.CACHE_RESPONSE_KEY;
+
+/**
+ * @author RenBoQing
+ * @date 2026年10月18日 18:34
+ * @Description 响应体缓存 命中时直接写出redis中的字节 未命中时记下key 由ResponseCacheAdvice写入
+ */
+public class ResponseCacheInterceptor implements HandlerInterceptor {
+    //未命中时保存响应缓存key的请求属性
+    public static final String RESPONSE_KEY_ATTRIBUTE = ResponseCacheInterceptor.class.getName() + ".key";
+
+    private RedisTemplate<String, byte[]> byteRedisTemplate;
+    private CacheMetrics cacheMetrics;
+    private HotKeyDetector hotKeyDetector;
+    private CacheClient cacheClient;
+
+    public ResponseCacheInterceptor(RedisTemplate<String, byte[]> byteRedisTemplate, CacheMetrics cacheMetrics,
+                                    HotKeyDetector hotKeyDetector, CacheClient cacheClient) {
+        this.byteRedisTemplate = byteRedisTemplate;
+        this.cacheMetrics = cacheMetrics;
+        this.hotKeyDetector = hotKeyDetector;
+        this.cacheClient = cacheClient;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        if (!(handler instanceof HandlerMethod) || !"GET".equals(request.getMethod())) {
+            return true;
+        }
+        CachedResponse cachedResponse = ((HandlerMethod) handler).getMethodAnnotation(CachedResponse.class);
+        if (cachedResponse == null) {
+            return true;
+        }
+        @SuppressWarnings("unchecked")
+        Map<String, String> variables = (Map<String, String>) request.getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE);
+        String id = variables == null ? null : variables.get(cachedResponse.idVariable());
+        if (id == null) {
+            return true;
+        }
+        //与实体缓存使用同一个命名空间代数
+        String key = CACHE_RESPONSE_KEY + cacheClient.key(cachedResponse.keyPrefix(), id);
+        String keyPrefix = CACHE_RESPONSE_KEY + cachedResponse.keyPrefix();
+        //热点key的响应体固定在进程内 不访问redis
+        boolean hot = hotKeyDetector.record(key);
+        Object pinned = hot ? hotKeyDetector.getPinned(key) : null;
+        byte[] body = pinned instanceof byte[] ? (byte[]) pinned : byteRedisTemplate.opsForValue().get(key);
+        if (body == null) {
+            //未命中 交给controller 响应写出前缓存
+            cacheMetrics.request(keyPrefix, CacheMetrics.MISS);
+            request.setAttribute(RESPONSE_KEY_ATTRIBUTE, key);
+            return true;
+        }
+        //命中 直接写出
+        cacheMetrics.request(keyPrefix, CacheMetrics.HIT);
+        if (hot && pinned == null) {
+            hotKeyDetector.pin(key, body);
+        }
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setContentLength(body.length);
+        response.getOutputStream().write(body);
+        return false;
+    }
+}
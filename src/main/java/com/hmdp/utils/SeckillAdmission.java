@@ -0,0 +1,238 @@
+package com.hmdp.utils;
+
+import cn.hutool.cache.CacheUtil;
+import cn.hutool.cache.impl.TimedCache;
+import com.hmdp.config.SeckillProperties;
+import com.hmdp.entity.SeckillVoucher;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_STREAM;
+import static com.hmdp.utils.RedisConstants.SECKILL_RETAIN_TTL;
+import static com.hmdp.utils.RedisConstants.SECKILL_SOLD_OUT_CHANNEL;
+import static com.hmdp.utils.RedisConstants.SECKILL_STOCK_KEY;
+
+/**
+ * @author RenBoQing
+ * @date 2026年10月18日 21:05
+ * @Description 秒杀资格判断
+ * 库存拆分为多个分片 每个分片的库存hash 已下单用户set 订单stream带有相同的hash tag 位于同一个slot
+ * 用户按id固定到一个分片 时间判断 扣减库存 记录用户 订单写入stream由一个lua脚本原子完成
+ * 分片库存用完时向其他分片借库存 全部用完后广播售罄 各节点在本地直接拒绝 不再访问redis
+ */
+@Slf4j
+@Component
+public class SeckillAdmission {
+    public static final int OK = 0;
+    public static final int SOLD_OUT = 1;
+    public static final int DUPLICATE = 2;
+    public static final int NOT_STARTED = 3;
+    public static final int ENDED = 4;
+    public static final int NOT_LOADED = 5;
+
+    private static final DefaultRedisScript<Long> SECKILL_SCRIPT = script("lua/seckill.lua");
+    private static final DefaultRedisScript<Long> LOAD_SCRIPT = script("lua/seckill_load.lua");
+    private static final DefaultRedisScript<Long> ROLLBACK_SCRIPT = script("lua/seckill_rollback.lua");
+    private static final DefaultRedisScript<Long> STEAL_SCRIPT = script("lua/seckill_steal.lua");
+    private static final DefaultRedisScript<Long> RETURN_SCRIPT = script("lua/seckill_return.lua");
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+    @Resource
+    private SeckillProperties seckillProperties;
+
+    //本地售罄标记 key为优惠券id
+    private TimedCache<Long, Boolean> soldOut;
+
+    private static DefaultRedisScript<Long> script(String path) {
+        DefaultRedisScript<Long> script = new DefaultRedisScript<>();
+        script.setLocation(new ClassPathResource(path));
+        script.setResultType(Long.class);
+        return script;
+    }
+
+    @PostConstruct
+    public void init() {
+        soldOut = CacheUtil.newTimedCache(seckillProperties.getStock().getSoldOutTtl().toMillis());
+        soldOut.schedulePrune(seckillProperties.getStock().getSoldOutTtl().toMillis());
+        //消息格式 优惠券id\n1售罄 0有库存
+        redisMessageListenerContainer.addMessageListener((message, pattern) -> {
+            String[] parts = new String(message.getBody(), StandardCharsets.UTF_8).split("\n");
+            Long voucherId = Long.valueOf(parts[0]);
+            if ("1".equals(parts[1])) {
+                soldOut.put(voucherId, Boolean.TRUE);
+            } else {
+                soldOut.remove(voucherId);
+            }
+        }, new ChannelTopic(SECKILL_SOLD_OUT_CHANNEL));
+    }
+
+    public int shards() {
+        return Math.max(1, seckillProperties.getStock().getShards());
+    }
+
+    //分片的hash tag 同一分片的key位于同一个slot
+    private static String tag(int shard) {
+        return ":{s" + shard + "}";
+    }
+
+    public static String stream(int shard) {
+        return SECKILL_ORDER_STREAM + tag(shard);
+    }
+
+    private static String stockKey(Long voucherId, int shard) {
+        return SECKILL_STOCK_KEY + voucherId + tag(shard);
+    }
+
+    private static String orderKey(Long voucherId, int shard) {
+        return SECKILL_ORDER_KEY + voucherId + tag(shard);
+    }
+
+    //用户固定的分片 重复下单只需检查这一个分片
+    private int home(Long userId) {
+        return (int) Math.floorMod(userId, (long) shards());
+    }
+
+    //本地判断是否已售罄 不访问redis
+    public boolean isSoldOut(Long voucherId) {
+        return soldOut.containsKey(voucherId);
+    }
+
+    /*
+     *判断用户能否下单 通过时已扣减库存 记录用户并把订单写入stream
+     * 所在分片没有库存时依次向其他分片借 都借不到时广播售罄
+     * @param voucherId
+     * @param userId
+     * @param orderId
+     * @return OK SOLD_OUT DUPLICATE NOT_STARTED ENDED NOT_LOADED之一
+     */
+    public int admit(Long voucherId, Long userId, Long orderId) {
+        if (isSoldOut(voucherId)) {
+            return SOLD_OUT;
+        }
+        int home = home(userId);
+        int result = admit(voucherId, userId, orderId, home, false);
+        if (result != SOLD_OUT) {
+            return result;
+        }
+        int shards = shards();
+        for (int i = 1; i < shards; i++) {
+            int sibling = (home + i) % shards;
+            if (!steal(voucherId, sibling)) {
+                continue;
+            }
+            result = admit(voucherId, userId, orderId, home, true);
+            if (result != OK) {
+                //借来的库存没有用上 还回去
+                giveBack(voucherId, sibling);
+            }
+            return result;
+        }
+        publish(voucherId, true);
+        return SOLD_OUT;
+    }
+
+    private int admit(Long voucherId, Long userId, Long orderId, int shard, boolean borrowed) {
+        List<String> keys = Arrays.asList(stockKey(voucherId, shard), orderKey(voucherId, shard), stream(shard));
+        Long result = stringRedisTemplate.execute(SECKILL_SCRIPT, keys,
+                userId.toString(), String.valueOf(System.currentTimeMillis()), voucherId.toString(), orderId.toString(),
+                borrowed ? "1" : "0");
+        return result == null ? NOT_LOADED : result.intValue();
+    }
+
+    private boolean steal(Long voucherId, int shard) {
+        Long result = stringRedisTemplate.execute(STEAL_SCRIPT, Collections.singletonList(stockKey(voucherId, shard)));
+        return result != null && result == 1L;
+    }
+
+    //分片已过期时不归还 直接increment会重建一个只有库存的hash 之后的判断在lua中出错
+    private void giveBack(Long voucherId, int shard) {
+        stringRedisTemplate.execute(RETURN_SCRIPT, Collections.singletonList(stockKey(voucherId, shard)));
+    }
+
+    /*
+     *把秒杀库存和时间写入redis 库存平均分到各分片 已存在的分片不覆盖 避免重置已扣减的库存
+     * 结束后保留一段时间 期间依然可以判断重复下单
+     * @param voucher
+     * @return 是否有分片写入
+     */
+    public boolean load(SeckillVoucher voucher) {
+        long begin = toMillis(voucher.getBeginTime());
+        long end = toMillis(voucher.getEndTime());
+        long expireAt = end + TimeUnit.HOURS.toMillis(SECKILL_RETAIN_TTL);
+        int shards = shards();
+        int stock = voucher.getStock();
+        boolean loaded = false;
+        for (int shard = 0; shard < shards; shard++) {
+            int shardStock = stock / shards + (shard < stock % shards ? 1 : 0);
+            Long result = stringRedisTemplate.execute(LOAD_SCRIPT, Collections.singletonList(stockKey(voucher.getVoucherId(), shard)),
+                    String.valueOf(shardStock), String.valueOf(begin), String.valueOf(end), String.valueOf(expireAt));
+            loaded |= result != null && result == 1L;
+        }
+        return loaded;
+    }
+
+    //订单未能写入时撤销资格 库存归还到用户所在分片 用户可以重新下单
+    public boolean rollback(Long voucherId, Long userId) {
+        return undo(voucherId, userId, true, true);
+    }
+
+    //数据库库存不足 订单未写入 用户可以重新下单 库存不再归还
+    public void releaseUser(Long voucherId, Long userId) {
+        undo(voucherId, userId, true, false);
+    }
+
+    //数据库中已有该用户的订单 只归还这次多扣的库存
+    public void releaseStock(Long voucherId, Long userId) {
+        undo(voucherId, userId, false, true);
+    }
+
+    private boolean undo(Long voucherId, Long userId, boolean removeUser, boolean returnStock) {
+        int home = home(userId);
+        List<String> keys = Arrays.asList(stockKey(voucherId, home), orderKey(voucherId, home));
+        Long result = stringRedisTemplate.execute(ROLLBACK_SCRIPT, keys, userId.toString(),
+                removeUser ? "1" : "0", returnStock ? "1" : "0");
+        if (result == null || result != 1L) {
+            return false;
+        }
+        publish(voucherId, false);
+        return true;
+    }
+
+    //通知所有节点更新售罄标记 本节点由广播回调更新 这里先行写入
+    private void publish(Long voucherId, boolean isSoldOut) {
+        if (isSoldOut) {
+            soldOut.put(voucherId, Boolean.TRUE);
+        } else {
+            soldOut.remove(voucherId);
+        }
+        try {
+            stringRedisTemplate.convertAndSend(SECKILL_SOLD_OUT_CHANNEL, voucherId + "\n" + (isSoldOut ? 1 : 0));
+        } catch (RuntimeException e) {
+            //其他节点在标记过期前依然按原状态判断
+            log.warn("售罄广播失败 voucherId={}", voucherId, e);
+        }
+    }
+
+    private static long toMillis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
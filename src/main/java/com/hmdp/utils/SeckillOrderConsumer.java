@@ -0,0 +1,310 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.lang.UUID;
+import com.hmdp.config.SeckillProperties;
+import com.hmdp.entity.VoucherOrder;
+import com.hmdp.service.IVoucherOrderService;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.RedisConfiguration;
+import org.springframework.data.redis.connection.RedisStreamCommands;
+import org.springframework.data.redis.connection.lettuce.LettuceClientConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.connection.lettuce.LettucePoolingClientConfiguration;
+import org.springframework.data.redis.connection.stream.ByteRecord;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.PendingMessage;
+import org.springframework.data.redis.connection.stream.PendingMessages;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_GROUP;
+
+/**
+ * @author RenBoQing
+ * @date 2026年10月18日 21:45
+ * @Description 秒杀订单消费者
+ * 通过资格判断的订单由lua脚本写入所在分片的stream 每个节点为每个分片启动若干消费者以消费者组g1读取
+ * 一次读取一批订单在一个事务中批量写库 提交后才ACK 处理失败的订单留在pending列表
+ * 定时认领长时间未确认的订单重新处理 节点宕机时未写库的订单由其他节点接手
+ * 阻塞读取一直占用一个连接 消费者使用单独的连接池 大小为 分片数×consumers 不占用应用的连接池
+ */
+@Slf4j
+@Component
+public class SeckillOrderConsumer {
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private IVoucherOrderService voucherOrderService;
+    @Resource
+    private SeckillAdmission seckillAdmission;
+    @Resource
+    private SeckillProperties seckillProperties;
+    //应用的连接工厂 阻塞读取的连接池按它的配置创建
+    @Resource
+    private LettuceConnectionFactory redisConnectionFactory;
+
+    //阻塞读取专用的连接 只用于XREADGROUP
+    private LettuceConnectionFactory streamConnectionFactory;
+    private StringRedisTemplate streamRedisTemplate;
+
+    //本节点消费者名称的前缀
+    private final String nodeId = UUID.randomUUID().toString(true);
+    private final List<String> consumerNames = new ArrayList<>();
+    private final List<String> streams = new ArrayList<>();
+    private ExecutorService consumers;
+    private ScheduledExecutorService recovery;
+    private volatile boolean running = true;
+
+    @PostConstruct
+    public void init() {
+        SeckillProperties.Order order = seckillProperties.getOrder();
+        int count = Math.max(1, order.getConsumers());
+        int shards = seckillAdmission.shards();
+        AtomicInteger index = new AtomicInteger();
+        streamConnectionFactory = createStreamConnectionFactory(count * shards);
+        streamRedisTemplate = new StringRedisTemplate(streamConnectionFactory);
+        for (int i = 0; i < count; i++) {
+            consumerNames.add(nodeId + "-" + i);
+        }
+        //每个分片stream各有count个消费者
+        consumers = Executors.newFixedThreadPool(count * shards, r -> new Thread(r, "seckill-order-" + index.incrementAndGet()));
+        for (int shard = 0; shard < shards; shard++) {
+            String stream = SeckillAdmission.stream(shard);
+            streams.add(stream);
+            createGroup(stream);
+            for (int i = 0; i < count; i++) {
+                String name = consumerNames.get(i);
+                consumers.execute(() -> consume(stream, name));
+            }
+        }
+        String recoveryName = nodeId + "-recovery";
+        consumerNames.add(recoveryName);
+        recovery = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "seckill-order-recovery");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = order.getRecoveryInterval().toMillis();
+        recovery.scheduleWithFixedDelay(() -> streams.forEach(stream -> recover(stream, recoveryName)),
+                interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    //停止读取新订单 正在写库的批次完成后退出 并移除没有未确认订单的消费者
+    @PreDestroy
+    public void destroy() throws InterruptedException {
+        running = false;
+        recovery.shutdown();
+        consumers.shutdown();
+        long timeout = seckillProperties.getOrder().getBlockTimeout().toMillis() + TimeUnit.SECONDS.toMillis(10);
+        if (!consumers.awaitTermination(timeout, TimeUnit.MILLISECONDS)) {
+            log.warn("秒杀订单消费者未能按时停止");
+        }
+        streamConnectionFactory.destroy();
+        for (String stream : streams) {
+            for (String name : consumerNames) {
+                try {
+                    PendingMessages pending = stringRedisTemplate.opsForStream()
+                            .pending(stream, Consumer.from(SECKILL_ORDER_GROUP, name), Range.unbounded(), 1L);
+                    if (pending.isEmpty()) {
+                        stringRedisTemplate.opsForStream().deleteConsumer(stream, Consumer.from(SECKILL_ORDER_GROUP, name));
+                    }
+                } catch (RuntimeException e) {
+                    log.warn("移除消费者失败 {} {}", stream, name, e);
+                }
+            }
+        }
+    }
+
+    //复制应用连接工厂的redis配置(单机 哨兵 集群)和客户端配置 只替换连接池 大小等于阻塞读取的线程数
+    private LettuceConnectionFactory createStreamConnectionFactory(int readers) {
+        RedisConfiguration configuration;
+        if (redisConnectionFactory.isClusterAware()) {
+            configuration = redisConnectionFactory.getClusterConfiguration();
+        } else if (redisConnectionFactory.isRedisSentinelAware()) {
+            configuration = redisConnectionFactory.getSentinelConfiguration();
+        } else {
+            configuration = redisConnectionFactory.getStandaloneConfiguration();
+        }
+        GenericObjectPoolConfig<?> pool = new GenericObjectPoolConfig<>();
+        pool.setMaxTotal(readers);
+        pool.setMaxIdle(readers);
+        pool.setMinIdle(0);
+        LettuceClientConfiguration client = redisConnectionFactory.getClientConfiguration();
+        LettucePoolingClientConfiguration.LettucePoolingClientConfigurationBuilder builder = LettucePoolingClientConfiguration.builder()
+                .poolConfig(pool);
+        builder.commandTimeout(client.getCommandTimeout())
+                .shutdownTimeout(client.getShutdownTimeout())
+                .shutdownQuietPeriod(client.getShutdownQuietPeriod());
+        //共用应用的ClientResources 关闭本工厂时不会关闭它
+        client.getClientResources().ifPresent(builder::clientResources);
+        client.getClientOptions().ifPresent(builder::clientOptions);
+        client.getClientName().ifPresent(builder::clientName);
+        client.getReadFrom().ifPresent(builder::readFrom);
+        if (client.isUseSsl()) {
+            LettucePoolingClientConfiguration.LettucePoolingSslClientConfigurationBuilder ssl = builder.useSsl();
+            if (!client.isVerifyPeer()) {
+                ssl.disablePeerVerification();
+            }
+            if (client.isStartTls()) {
+                ssl.startTls();
+            }
+        }
+        LettuceConnectionFactory factory = new LettuceConnectionFactory(configuration, builder.build());
+        factory.afterPropertiesSet();
+        return factory;
+    }
+
+    //创建消费者组 从头读取 stream不存在时一并创建 已存在时忽略
+    private void createGroup(String stream) {
+        try {
+            stringRedisTemplate.execute((RedisCallback<String>) connection -> connection.streamCommands().xGroupCreate(
+                    stream.getBytes(StandardCharsets.UTF_8), SECKILL_ORDER_GROUP, ReadOffset.from("0"), true));
+        } catch (RuntimeException e) {
+            if (!String.valueOf(e.getMessage()).contains("BUSYGROUP")) {
+                log.error("创建消费者组失败", e);
+            }
+        }
+    }
+
+    private void consume(String stream, String name) {
+        SeckillProperties.Order order = seckillProperties.getOrder();
+        Consumer consumer = Consumer.from(SECKILL_ORDER_GROUP, name);
+        StreamReadOptions options = StreamReadOptions.empty().count(order.getBatchSize()).block(order.getBlockTimeout());
+        while (running) {
+            try {
+                List<MapRecord<String, Object, Object>> records = streamRedisTemplate.opsForStream()
+                        .read(consumer, options, StreamOffset.create(stream, ReadOffset.lastConsumed()));
+                if (records == null || records.isEmpty()) {
+                    continue;
+                }
+                List<VoucherOrder> voucherOrders = new ArrayList<>(records.size());
+                List<RecordId> ids = new ArrayList<>(records.size());
+                for (MapRecord<String, Object, Object> record : records) {
+                    voucherOrders.add(toVoucherOrder(record.getId(), record.getValue()));
+                    ids.add(record.getId());
+                }
+                persist(stream, voucherOrders, ids);
+            } catch (Exception e) {
+                //未确认的订单留在pending列表 由定时任务认领重试
+                log.error("处理秒杀订单失败", e);
+                if (String.valueOf(e.getMessage()).contains("NOGROUP")) {
+                    createGroup(stream);
+                }
+                sleepQuietly(order.getBlockTimeout().toMillis());
+            }
+        }
+    }
+
+    //写库成功后确认并删除 stream中只保留未处理的订单
+    private void persist(String stream, List<VoucherOrder> voucherOrders, List<RecordId> ids) {
+        voucherOrderService.createVoucherOrders(voucherOrders);
+        RecordId[] recordIds = ids.toArray(new RecordId[0]);
+        stringRedisTemplate.opsForStream().acknowledge(stream, SECKILL_ORDER_GROUP, recordIds);
+        stringRedisTemplate.opsForStream().delete(stream, recordIds);
+    }
+
+    /*
+     *认领长时间未确认的订单重新写库
+     * 超过最多投递次数的订单不再重试 确认后归还redis中的库存
+     * @param stream 分片的订单stream
+     * @param recoveryName 本节点用于认领的消费者
+     */
+    private void recover(String stream, String recoveryName) {
+        SeckillProperties.Order order = seckillProperties.getOrder();
+        try {
+            PendingMessages pending = stringRedisTemplate.opsForStream()
+                    .pending(stream, SECKILL_ORDER_GROUP, Range.unbounded(), order.getBatchSize());
+            List<RecordId> idle = new ArrayList<>();
+            Map<RecordId, Long> deliveries = new HashMap<>();
+            for (PendingMessage message : pending) {
+                if (message.getElapsedTimeSinceLastDelivery().compareTo(order.getClaimIdle()) >= 0) {
+                    idle.add(message.getId());
+                    deliveries.put(message.getId(), message.getTotalDeliveryCount());
+                }
+            }
+            if (idle.isEmpty()) {
+                return;
+            }
+            //认领时再次检查空闲时间 多个节点同时认领时只有一个成功
+            RedisStreamCommands.XClaimOptions options = RedisStreamCommands.XClaimOptions
+                    .minIdle(order.getClaimIdle()).ids(idle.toArray(new RecordId[0]));
+            List<ByteRecord> claimed = stringRedisTemplate.execute((RedisCallback<List<ByteRecord>>) connection -> connection.streamCommands()
+                    .xClaim(stream.getBytes(StandardCharsets.UTF_8), SECKILL_ORDER_GROUP, recoveryName, options));
+            if (claimed == null || claimed.isEmpty()) {
+                return;
+            }
+            //逐条重试 一条订单无法写入不影响同批的其他订单
+            for (ByteRecord byteRecord : claimed) {
+                MapRecord<String, String, String> record = byteRecord.deserialize(RedisSerializer.string());
+                VoucherOrder voucherOrder = toVoucherOrder(record.getId(), record.getValue());
+                if (deliveries.getOrDefault(record.getId(), 0L) >= order.getMaxDeliveries()) {
+                    discard(stream, record.getId(), voucherOrder);
+                    continue;
+                }
+                try {
+                    persist(stream, Collections.singletonList(voucherOrder), Collections.singletonList(record.getId()));
+                } catch (Exception e) {
+                    log.error("重新处理秒杀订单失败 {}", voucherOrder, e);
+                }
+            }
+            log.info("重新处理未确认的秒杀订单{}条 {}", claimed.size(), stream);
+        } catch (Exception e) {
+            log.error("认领未确认的秒杀订单失败 {}", stream, e);
+        }
+    }
+
+    //放弃订单 未写入数据库时归还库存 用户可以重新下单
+    private void discard(String stream, RecordId id, VoucherOrder voucherOrder) {
+        log.error("秒杀订单多次处理失败 放弃该订单 {}", voucherOrder);
+        if (voucherOrderService.getById(voucherOrder.getId()) == null) {
+            seckillAdmission.rollback(voucherOrder.getVoucherId(), voucherOrder.getUserId());
+        }
+        stringRedisTemplate.opsForStream().acknowledge(stream, SECKILL_ORDER_GROUP, id);
+        stringRedisTemplate.opsForStream().delete(stream, id);
+    }
+
+    //下单时间取stream消息id中的时间戳 即通过资格判断的时间
+    private static VoucherOrder toVoucherOrder(RecordId id, Map<?, ?> value) {
+        VoucherOrder voucherOrder = new VoucherOrder();
+        voucherOrder.setId(Long.valueOf(value.get("id").toString()));
+        voucherOrder.setUserId(Long.valueOf(value.get("userId").toString()));
+        voucherOrder.setVoucherId(Long.valueOf(value.get("voucherId").toString()));
+        voucherOrder.setCreateTime(LocalDateTime.ofInstant(Instant.ofEpochMilli(id.getTimestamp()), ZoneId.systemDefault()));
+        return voucherOrder;
+    }
+
+    private static void sleepQuietly(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
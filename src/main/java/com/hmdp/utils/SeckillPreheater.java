@@ -0,0 +1,148 @@
+package com.hmdp.utils;
+
+import com.hmdp.config.SeckillProperties;
+import com.hmdp.entity.SeckillVoucher;
+import com.hmdp.service.ISeckillVoucherService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.DefaultTypedTuple;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_PREHEAT_KEY;
+
+/**
+ * @author RenBoQing
+ * @date 2026年10月18日 22:30
+ * @Description 秒杀预热
+ * 新增的秒杀券按开始时间登记在redis zset中 各节点定时取出即将开始的优惠券
+ * 把库存和秒杀时间加载到redis 同时放入本地表 秒杀期间下单不再读数据库 结束后移除
+ */
+@Slf4j
+@Component
+public class SeckillPreheater {
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private ISeckillVoucherService seckillVoucherService;
+    @Resource
+    private SeckillAdmission seckillAdmission;
+    @Resource
+    private SeckillProperties seckillProperties;
+
+    //已预热的优惠券 key为优惠券id 库存只是加载时的值 以redis为准
+    private final ConcurrentHashMap<Long, SeckillVoucher> vouchers = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    public void init() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "seckill-preheat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = seckillProperties.getPreheat().getScanInterval().toMillis();
+        scheduler.execute(this::registerActive);
+        scheduler.scheduleWithFixedDelay(this::preheatQuietly, 0, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        scheduler.shutdownNow();
+    }
+
+    //已预热的优惠券 未预热返回null
+    public SeckillVoucher get(Long voucherId) {
+        return vouchers.get(voucherId);
+    }
+
+    /*
+     *登记新增的秒杀券 临近开始时立即预热
+     * @param voucher
+     */
+    public void register(SeckillVoucher voucher) {
+        stringRedisTemplate.opsForZSet().add(SECKILL_PREHEAT_KEY, voucher.getVoucherId().toString(), toMillis(voucher.getBeginTime()));
+        if (!voucher.getBeginTime().isAfter(LocalDateTime.now().plus(seckillProperties.getPreheat().getLeadTime()))) {
+            preheat(voucher);
+        }
+    }
+
+    //启动时登记未结束的秒杀券 兼容登记功能上线前新增的优惠券
+    private void registerActive() {
+        try {
+            Set<ZSetOperations.TypedTuple<String>> active = seckillVoucherService.query()
+                    .gt("end_time", LocalDateTime.now())
+                    .list()
+                    .stream()
+                    .map(voucher -> new DefaultTypedTuple<>(voucher.getVoucherId().toString(), (double) toMillis(voucher.getBeginTime())))
+                    .collect(Collectors.toSet());
+            if (!active.isEmpty()) {
+                stringRedisTemplate.opsForZSet().add(SECKILL_PREHEAT_KEY, active);
+            }
+        } catch (Exception e) {
+            log.error("登记进行中的秒杀券失败", e);
+        }
+    }
+
+    private void preheatQuietly() {
+        try {
+            preheatDue();
+        } catch (Exception e) {
+            log.error("秒杀预热失败", e);
+        }
+    }
+
+    //加载即将开始和进行中的优惠券 移除已结束的
+    private void preheatDue() {
+        long due = System.currentTimeMillis() + seckillProperties.getPreheat().getLeadTime().toMillis();
+        Set<String> ids = stringRedisTemplate.opsForZSet().rangeByScore(SECKILL_PREHEAT_KEY, Double.NEGATIVE_INFINITY, due);
+        LocalDateTime now = LocalDateTime.now();
+        //本地表中已结束的直接移除
+        vouchers.values().removeIf(voucher -> voucher.getEndTime().isBefore(now));
+        if (ids == null || ids.isEmpty()) {
+            return;
+        }
+        List<Long> missing = ids.stream().map(Long::valueOf).filter(id -> !vouchers.containsKey(id)).collect(Collectors.toList());
+        if (missing.isEmpty()) {
+            return;
+        }
+        Set<Long> found = new HashSet<>();
+        for (SeckillVoucher voucher : seckillVoucherService.listByIds(missing)) {
+            found.add(voucher.getVoucherId());
+            if (voucher.getEndTime().isBefore(now)) {
+                stringRedisTemplate.opsForZSet().remove(SECKILL_PREHEAT_KEY, voucher.getVoucherId().toString());
+            } else {
+                preheat(voucher);
+            }
+        }
+        //已删除的优惠券不再登记
+        missing.stream().filter(id -> !found.contains(id))
+                .forEach(id -> stringRedisTemplate.opsForZSet().remove(SECKILL_PREHEAT_KEY, id.toString()));
+    }
+
+    //redis中已有库存时不覆盖 多个节点重复预热不影响
+    private void preheat(SeckillVoucher voucher) {
+        seckillAdmission.load(voucher);
+        vouchers.put(voucher.getVoucherId(), voucher);
+        log.info("秒杀券预热完成 voucherId={} 开始时间{}", voucher.getVoucherId(), voucher.getBeginTime());
+    }
+
+    private static long toMillis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
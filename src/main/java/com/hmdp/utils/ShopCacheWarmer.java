@@ -0,0 +1,228 @@
+package com.hmdp.utils;
+
+import com.hmdp.config.CacheClientProperties;
+import com.hmdp.entity.Shop;
+import com.hmdp.service.IShopService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.hmdp.utils.RedisConstants.CACHE_LOGICAL_EXPIRE_SEGMENT;
+import static com.hmdp.utils.RedisConstants.CACHE_SHOP_KEY;
+import static com.hmdp.utils.RedisConstants.CACHE_SHOP_TTL;
+
+/**
+ * @author RenBoQing
+ * @date 2026年10月18日 15:02
+ * @Description 店铺缓存预热
+ * 启动时先同步加载热点店铺 完成后spring才会把实例标记为就绪(readiness)
+ * 其余店铺按id分页流式读取 在后台多线程pipeline写入redis 也可以通过actuator手动触发
+ * 只写入不存在的key 不覆盖预热期间其他请求写入的更新的值 有页写入失败时结束于FAILED
+ */
+@Slf4j
+@Component
+public class ShopCacheWarmer implements ApplicationRunner {
+    @Resource
+    private IShopService shopService;
+    @Resource
+    private CacheClient cacheClient;
+    @Resource
+    private CacheClientProperties cacheClientProperties;
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    //当前阶段 IDLE/HOT/FULL/DONE/FAILED
+    private volatile String phase = "IDLE";
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong loaded = new AtomicLong();
+    //写入失败的页数
+    private final AtomicInteger failedPages = new AtomicInteger();
+    private volatile long startTime;
+    private volatile long endTime;
+
+    private Timer pageTimer;
+    private Counter failedPageCounter;
+
+    @PostConstruct
+    public void init() {
+        pageTimer = Timer.builder("cache.warmup.page").register(meterRegistry);
+        failedPageCounter = Counter.builder("cache.warmup.failures").register(meterRegistry);
+        Gauge.builder("cache.warmup.shops", loaded, AtomicLong::get).tag("state", "loaded").register(meterRegistry);
+        Gauge.builder("cache.warmup.shops", total, AtomicLong::get).tag("state", "total").register(meterRegistry);
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!cacheClientProperties.getWarmUp().isEnabled()) {
+            return;
+        }
+        if (!running.compareAndSet(false, true)) {
+            return;
+        }
+        //热点店铺在启动线程中同步加载 runner返回后实例才就绪
+        try {
+            begin();
+            warmUpHotSet();
+        } catch (RuntimeException e) {
+            fail(e);
+            return;
+        }
+        startFullAsync();
+    }
+
+    //手动触发 正在预热时返回false
+    public boolean start() {
+        if (!running.compareAndSet(false, true)) {
+            return false;
+        }
+        begin();
+        startFullAsync();
+        return true;
+    }
+
+    public Map<String, Object> progress() {
+        Map<String, Object> progress = new LinkedHashMap<>();
+        progress.put("phase", phase);
+        progress.put("loaded", loaded.get());
+        progress.put("total", total.get());
+        progress.put("failedPages", failedPages.get());
+        long end = running.get() ? System.currentTimeMillis() : endTime;
+        progress.put("elapsedMillis", startTime == 0 ? 0 : end - startTime);
+        return progress;
+    }
+
+    private void begin() {
+        startTime = System.currentTimeMillis();
+        loaded.set(0);
+        failedPages.set(0);
+        total.set(shopService.count());
+        log.info("店铺缓存预热开始 共{}条", total.get());
+    }
+
+    private void fail(Exception e) {
+        phase = "FAILED";
+        endTime = System.currentTimeMillis();
+        running.set(false);
+        log.error("店铺缓存预热失败", e);
+    }
+
+    //按销量加载热点店铺
+    private void warmUpHotSet() {
+        phase = "HOT";
+        int hotSetSize = cacheClientProperties.getWarmUp().getHotSetSize();
+        if (hotSetSize <= 0) {
+            return;
+        }
+        List<Shop> hotShops = shopService.query()
+                .orderByDesc("sold")
+                .last("limit " + hotSetSize)
+                .list();
+        int pageSize = cacheClientProperties.getWarmUp().getPageSize();
+        for (int from = 0; from < hotShops.size(); from += pageSize) {
+            write(hotShops.subList(from, Math.min(from + pageSize, hotShops.size())));
+        }
+        log.info("热点店铺预热完成 {}条 耗时{}ms", hotShops.size(), System.currentTimeMillis() - startTime);
+    }
+
+    private void startFullAsync() {
+        Thread thread = new Thread(() -> {
+            try {
+                warmUpAll();
+                phase = "DONE";
+                endTime = System.currentTimeMillis();
+                running.set(false);
+                log.info("店铺缓存预热完成 共{}条 耗时{}ms", loaded.get(), endTime - startTime);
+            } catch (Exception e) {
+                fail(e);
+            }
+        }, "shop-cache-warmer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    //按id分页流式读取全部店铺 最多concurrency页同时写入
+    private void warmUpAll() throws InterruptedException {
+        phase = "FULL";
+        CacheClientProperties.WarmUp warmUp = cacheClientProperties.getWarmUp();
+        int concurrency = Math.max(1, warmUp.getConcurrency());
+        AtomicInteger threadNumber = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency, r -> {
+            Thread thread = new Thread(r, "shop-cache-warmer-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        Semaphore permits = new Semaphore(concurrency);
+        try {
+            Long lastId = 0L;
+            while (true) {
+                List<Shop> shops = shopService.query()
+                        .gt("id", lastId)
+                        .orderByAsc("id")
+                        .last("limit " + warmUp.getPageSize())
+                        .list();
+                if (shops.isEmpty()) {
+                    break;
+                }
+                lastId = shops.get(shops.size() - 1).getId();
+                permits.acquire();
+                executor.execute(() -> {
+                    try {
+                        write(shops);
+                    } catch (Exception e) {
+                        failedPages.incrementAndGet();
+                        failedPageCounter.increment();
+                        log.error("店铺缓存预热写入失败 id {}~{}", shops.get(0).getId(), shops.get(shops.size() - 1).getId(), e);
+                    } finally {
+                        permits.release();
+                    }
+                });
+            }
+            //等待所有页写完
+            permits.acquire(concurrency);
+        } finally {
+            executor.shutdown();
+        }
+        if (failedPages.get() > 0) {
+            throw new IllegalStateException("店铺缓存预热有" + failedPages.get() + "页写入失败");
+        }
+    }
+
+    //一页数据一次pipeline写入
+    private void write(List<Shop> shops) {
+        pageTimer.record(() -> writePage(shops));
+        long count = loaded.addAndGet(shops.size());
+        log.debug("店铺缓存预热进度 {}/{}", count, total.get());
+    }
+
+    private void writePage(List<Shop> shops) {
+        //逻辑过期数据写入queryWithLogicalExpire读取的key 不覆盖queryById读取的实体key
+        boolean logicalExpire = cacheClientProperties.getWarmUp().isLogicalExpire();
+        String prefix = logicalExpire ? CACHE_SHOP_KEY + CACHE_LOGICAL_EXPIRE_SEGMENT : CACHE_SHOP_KEY;
+        Map<String, Shop> entries = new LinkedHashMap<>(shops.size() * 2);
+        shops.forEach(shop -> entries.put(prefix + shop.getId(), shop));
+        if (logicalExpire) {
+            cacheClient.setBatchWithLogicalExpireIfAbsent(entries, CACHE_SHOP_TTL, TimeUnit.MINUTES);
+        } else {
+            cacheClient.setBatchIfAbsent(entries, CACHE_SHOP_TTL, TimeUnit.MINUTES);
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.hmdp.utils;
+
+/**
+ * @author RenBoQing
+ * @date 2026年10月18日 23:00
+ * @Description 进程内令牌桶 按时间差补充令牌 桶容量为一秒的令牌数
+ */
+public class TokenBucket {
+    private final double ratePerNano;
+    private final double capacity;
+    private double tokens;
+    private long lastRefill;
+
+    public TokenBucket(double permitsPerSecond) {
+        this.ratePerNano = permitsPerSecond / 1_000_000_000D;
+        this.capacity = Math.max(1D, permitsPerSecond);
+        this.tokens = capacity;
+        this.lastRefill = System.nanoTime();
+    }
+
+    public synchronized boolean tryAcquire() {
+        long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - lastRefill) * ratePerNano);
+        lastRefill = now;
+        if (tokens < 1D) {
+            return false;
+        }
+        tokens -= 1D;
+        return true;
+    }
+}
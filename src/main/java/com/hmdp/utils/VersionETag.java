@@ -0,0 +1,28 @@
+package com.hmdp.utils;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * @author RenBoQing
+ * @date 2026年10月18日 19:02
+ * @Description GET接口按实体版本号生成ETag 版本号随实体缓存一起失效
+ * 请求头If-None-Match与当前版本一致时 ETagInterceptor直接返回304 不进入controller
+ * 经过CacheClient缓存的实体 版本号是缓存内容的摘要 实体未缓存时不返回ETag
+ */
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface VersionETag {
+    //实体缓存的前缀
+    String keyPrefix();
+
+    //路径变量名 其值拼接在keyPrefix之后
+    String idVariable() default "id";
+
+    //数据是否经过CacheClient缓存 否时每次查询数据库 版本号在首次读取时随机生成
+    boolean cached() default true;
+}
@@ -0,0 +1,13 @@
+-- 加锁 KEYS[1]锁的key ARGV[1]租期毫秒 ARGV[2]持有者 ARGV[3]是否可重入
+-- 成功返回nil 失败返回锁的剩余毫秒数
+if redis.call('exists', KEYS[1]) == 0 then
+    redis.call('hset', KEYS[1], ARGV[2], 1)
+    redis.call('pexpire', KEYS[1], ARGV[1])
+    return nil
+end
+if ARGV[3] == '1' and redis.call('hexists', KEYS[1], ARGV[2]) == 1 then
+    redis.call('hincrby', KEYS[1], ARGV[2], 1)
+    redis.call('pexpire', KEYS[1], ARGV[1])
+    return nil
+end
+return redis.call('pttl', KEYS[1])
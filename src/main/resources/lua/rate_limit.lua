@@ -0,0 +1,22 @@
+-- GCRA限流 KEYS[1]限流key ARGV[1]平均间隔微秒 ARGV[2]允许突发的时长微秒
+-- 通过返回0 拒绝返回需要等待的微秒数
+-- 使用redis的时间 各节点时钟不一致不影响
+if redis.replicate_commands then
+    redis.replicate_commands()
+end
+local interval = tonumber(ARGV[1])
+local tolerance = tonumber(ARGV[2])
+local time = redis.call('time')
+local now = tonumber(time[1]) * 1000000 + tonumber(time[2])
+-- tat 理论上下一个请求到达的时间
+local tat = tonumber(redis.call('get', KEYS[1]))
+if not tat or tat < now then
+    tat = now
+end
+local allowAt = tat - tolerance
+if now < allowAt then
+    return math.ceil(allowAt - now)
+end
+local newTat = tat + interval
+redis.call('set', KEYS[1], string.format('%.0f', newTat), 'px', math.ceil((newTat - now) / 1000))
+return 0
@@ -0,0 +1,7 @@
+-- 续期 KEYS[1]锁的key ARGV[1]租期毫秒 ARGV[2]持有者
+-- 仍是持有者时续期并返回1 否则返回0
+if redis.call('hexists', KEYS[1], ARGV[2]) == 1 then
+    redis.call('pexpire', KEYS[1], ARGV[1])
+    return 1
+end
+return 0
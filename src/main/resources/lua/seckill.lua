@@ -0,0 +1,31 @@
+-- 秒杀资格判断 通过后订单写入stream KEYS为同一分片的 [1]库存hash [2]已下单用户set [3]订单stream
+-- ARGV[1]用户id ARGV[2]当前时间毫秒 ARGV[3]优惠券id ARGV[4]订单id ARGV[5]为1时库存已从其他分片借得
+-- 返回 0成功 1库存不足 2重复下单 3未开始 4已结束 5库存未加载
+local voucher = redis.call('hmget', KEYS[1], 'stock', 'begin', 'end')
+if not voucher[1] then
+    return 5
+end
+local now = tonumber(ARGV[2])
+if now < tonumber(voucher[2]) then
+    return 3
+end
+if now > tonumber(voucher[3]) then
+    return 4
+end
+if redis.call('sismember', KEYS[2], ARGV[1]) == 1 then
+    return 2
+end
+if ARGV[5] ~= '1' then
+    if tonumber(voucher[1]) <= 0 then
+        return 1
+    end
+    redis.call('hincrby', KEYS[1], 'stock', -1)
+end
+redis.call('sadd', KEYS[2], ARGV[1])
+-- 已下单用户与库存同时过期
+local ttl = redis.call('pttl', KEYS[1])
+if ttl > 0 and redis.call('pttl', KEYS[2]) < 0 then
+    redis.call('pexpire', KEYS[2], ttl)
+end
+redis.call('xadd', KEYS[3], '*', 'userId', ARGV[1], 'voucherId', ARGV[3], 'id', ARGV[4])
+return 0
@@ -0,0 +1,8 @@
+-- 加载秒杀库存 已存在时不覆盖 KEYS[1]库存hash
+-- ARGV[1]库存 ARGV[2]开始时间毫秒 ARGV[3]结束时间毫秒 ARGV[4]过期时间点毫秒
+if redis.call('exists', KEYS[1]) == 1 then
+    return 0
+end
+redis.call('hmset', KEYS[1], 'stock', ARGV[1], 'begin', ARGV[2], 'end', ARGV[3])
+redis.call('pexpireat', KEYS[1], ARGV[4])
+return 1
@@ -0,0 +1,7 @@
+-- 归还借来的库存 KEYS[1]库存hash 已过期时不再写入 避免生成没有时间和ttl的分片
+-- 返回是否归还
+if redis.call('exists', KEYS[1]) == 0 then
+    return 0
+end
+redis.call('hincrby', KEYS[1], 'stock', 1)
+return 1
@@ -0,0 +1,13 @@
+-- 撤销秒杀资格 KEYS[1]库存hash KEYS[2]已下单用户set ARGV[1]用户id
+-- ARGV[2]为1时移除用户 ARGV[3]为1时归还库存 返回是否归还了库存
+if redis.call('sismember', KEYS[2], ARGV[1]) == 0 then
+    return 0
+end
+if ARGV[2] == '1' then
+    redis.call('srem', KEYS[2], ARGV[1])
+end
+if ARGV[3] == '1' and redis.call('exists', KEYS[1]) == 1 then
+    redis.call('hincrby', KEYS[1], 'stock', 1)
+    return 1
+end
+return 0
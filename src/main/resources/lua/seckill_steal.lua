@@ -0,0 +1,7 @@
+-- 从分片借一个库存 KEYS[1]库存hash 成功返回1
+local stock = redis.call('hget', KEYS[1], 'stock')
+if stock and tonumber(stock) > 0 then
+    redis.call('hincrby', KEYS[1], 'stock', -1)
+    return 1
+end
+return 0
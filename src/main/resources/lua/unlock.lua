@@ -0,0 +1,13 @@
+-- 解锁 KEYS[1]锁的key ARGV[1]租期毫秒 ARGV[2]持有者 ARGV[3]释放通知的频道
+-- 不是持有者返回nil 重入次数减一返回0 完全释放返回1并通知等待者
+if redis.call('hexists', KEYS[1], ARGV[2]) == 0 then
+    return nil
+end
+local count = redis.call('hincrby', KEYS[1], ARGV[2], -1)
+if count > 0 then
+    redis.call('pexpire', KEYS[1], ARGV[1])
+    return 0
+end
+redis.call('del', KEYS[1])
+redis.call('publish', ARGV[3], KEYS[1])
+return 1
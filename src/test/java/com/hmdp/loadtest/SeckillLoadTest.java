@@ -0,0 +1,198 @@
+package com.hmdp.loadtest;
+
+import com.hmdp.dto.Result;
+import com.hmdp.dto.UserDTO;
+import com.hmdp.entity.SeckillVoucher;
+import com.hmdp.entity.Voucher;
+import com.hmdp.entity.VoucherOrder;
+import com.hmdp.service.ISeckillVoucherService;
+import com.hmdp.service.IVoucherOrderService;
+import com.hmdp.service.IVoucherService;
+import com.hmdp.utils.UserHolder;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import redis.embedded.RedisServer;
+
+import javax.annotation.Resource;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author RenBoQing
+ * @date 2026年10月18日 23:40
+ * @Description 秒杀压测
+ * 应用连接内嵌redis和H2(MySQL模式) 多个线程以大量虚拟用户并发抢购同一张秒杀券
+ * 直接调用下单服务 不经过登录和限流拦截器 测的是资格判断和异步写库本身
+ * 输出吞吐量 p50/p99/p999延迟 下单数与库存 每个用户的重复订单
+ * 默认不运行 mvn test -Ploadtest -Dloadtest.users=10000 -Dloadtest.stock=500 -Dloadtest.attempts=50000 -Dloadtest.threads=200
+ */
+@Slf4j
+@SpringBootTest
+@ActiveProfiles("loadtest")
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_CLASS)
+class SeckillLoadTest {
+    private static final int USERS = Integer.getInteger("loadtest.users", 2000);
+    private static final int STOCK = Integer.getInteger("loadtest.stock", 100);
+    private static final int ATTEMPTS = Integer.getInteger("loadtest.attempts", USERS * 3);
+    private static final int THREADS = Integer.getInteger("loadtest.threads", 64);
+    //等待订单全部写库的最长时间
+    private static final long DRAIN_TIMEOUT = Long.getLong("loadtest.drainTimeoutSeconds", 60L);
+
+    @Resource
+    private IVoucherService voucherService;
+    @Resource
+    private ISeckillVoucherService seckillVoucherService;
+    @Resource
+    private IVoucherOrderService voucherOrderService;
+
+    //应用启动前先启动内嵌redis 使用空闲端口 避免与本机redis冲突
+    //应用在测试结束后关闭 redis在进程退出时停止 订单消费者可以正常退出
+    @DynamicPropertySource
+    static void redisProperties(DynamicPropertyRegistry registry) throws IOException {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        RedisServer redisServer = RedisServer.newRedisServer().bind("127.0.0.1").port(port).onShutdownForceStop(true).build();
+        redisServer.start();
+        int redisPort = port;
+        registry.add("spring.redis.port", () -> redisPort);
+    }
+
+    @Test
+    void seckill() throws Exception {
+        Long voucherId = createVoucher();
+
+        //每个用户抢购若干次 打乱顺序 模拟重复点击
+        List<Long> attempts = new ArrayList<>(ATTEMPTS);
+        for (int i = 0; i < ATTEMPTS; i++) {
+            attempts.add((long) (i % USERS) + 1);
+        }
+        Collections.shuffle(attempts);
+
+        long[] latencies = new long[ATTEMPTS];
+        Map<String, LongAdder> outcomes = new ConcurrentHashMap<>();
+        LongAdder errors = new LongAdder();
+        AtomicInteger next = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(THREADS);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        for (int t = 0; t < THREADS; t++) {
+            executor.execute(() -> {
+                try {
+                    start.await();
+                    int i;
+                    while ((i = next.getAndIncrement()) < ATTEMPTS) {
+                        UserDTO user = new UserDTO();
+                        user.setId(attempts.get(i));
+                        UserHolder.saveUser(user);
+                        long begin = System.nanoTime();
+                        try {
+                            Result result = voucherOrderService.seckillVoucher(voucherId);
+                            String outcome = Boolean.TRUE.equals(result.getSuccess()) ? "成功" : result.getErrorMsg();
+                            outcomes.computeIfAbsent(outcome, k -> new LongAdder()).increment();
+                        } catch (Exception e) {
+                            errors.increment();
+                            log.warn("下单异常", e);
+                        } finally {
+                            latencies[i] = System.nanoTime() - begin;
+                            UserHolder.removeUser();
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        done.await();
+        long elapsed = System.nanoTime() - begin;
+        executor.shutdown();
+
+        long admitted = outcomes.getOrDefault("成功", new LongAdder()).sum();
+        //订单异步写库 等待stream中的订单处理完成
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(DRAIN_TIMEOUT);
+        long orders = countOrders(voucherId);
+        while (orders < admitted && System.currentTimeMillis() < deadline) {
+            Thread.sleep(200);
+            orders = countOrders(voucherId);
+        }
+        long drained = System.nanoTime() - begin;
+
+        List<VoucherOrder> voucherOrders = voucherOrderService.query().select("user_id").eq("voucher_id", voucherId).list();
+        Map<Long, Long> perUser = voucherOrders.stream()
+                .collect(Collectors.groupingBy(VoucherOrder::getUserId, Collectors.counting()));
+        long duplicateUsers = perUser.values().stream().filter(count -> count > 1).count();
+        long duplicateOrders = perUser.values().stream().mapToLong(count -> count - 1).sum();
+        SeckillVoucher seckillVoucher = seckillVoucherService.getById(voucherId);
+
+        Arrays.sort(latencies);
+        log.info("========== 秒杀压测 ==========");
+        log.info("用户{} 库存{} 请求{} 线程{}", USERS, STOCK, ATTEMPTS, THREADS);
+        log.info("耗时{}ms 吞吐量{}次/秒 全部写库耗时{}ms", TimeUnit.NANOSECONDS.toMillis(elapsed),
+                String.format("%.0f", ATTEMPTS / (elapsed / 1_000_000_000D)), TimeUnit.NANOSECONDS.toMillis(drained));
+        log.info("延迟 p50={} p99={} p999={} max={}", micros(latencies, 0.5), micros(latencies, 0.99),
+                micros(latencies, 0.999), micros(latencies, 1));
+        log.info("结果 {} 异常{}", outcomes.entrySet().stream()
+                .collect(Collectors.toMap(Map.Entry::getKey, e -> e.getValue().sum())), errors.sum());
+        log.info("通过资格判断{} 订单{} 库存{} 数据库剩余库存{} 超卖{}", admitted, orders, STOCK,
+                seckillVoucher.getStock(), Math.max(0, orders - STOCK));
+        log.info("重复下单用户{} 重复订单{}", duplicateUsers, duplicateOrders);
+
+        assertEquals(0, errors.sum(), "下单出现异常");
+        assertTrue(orders <= STOCK, "超卖");
+        assertEquals(0, duplicateOrders, "存在重复订单");
+        assertEquals(admitted, orders, "通过资格判断的订单未全部写库");
+        assertEquals(STOCK - orders, seckillVoucher.getStock().longValue(), "数据库库存与订单数不一致");
+    }
+
+    //秒杀已开始 预热任务或首次下单时加载库存
+    private Long createVoucher() {
+        Voucher voucher = new Voucher();
+        voucher.setShopId(1L);
+        voucher.setTitle("压测秒杀券");
+        voucher.setPayValue(100L);
+        voucher.setActualValue(1000L);
+        voucher.setType(1);
+        voucher.setStatus(1);
+        voucher.setStock(STOCK);
+        voucher.setBeginTime(LocalDateTime.now().minusMinutes(1));
+        voucher.setEndTime(LocalDateTime.now().plusHours(1));
+        voucherService.addSeckillVoucher(voucher);
+        return voucher.getId();
+    }
+
+    private long countOrders(Long voucherId) {
+        return voucherOrderService.query().eq("voucher_id", voucherId).count();
+    }
+
+    private static String micros(long[] sorted, double percentile) {
+        int index = (int) Math.min(sorted.length - 1, Math.max(0, Math.ceil(percentile * sorted.length) - 1));
+        return TimeUnit.NANOSECONDS.toMicros(sorted[index]) + "us";
+    }
+}
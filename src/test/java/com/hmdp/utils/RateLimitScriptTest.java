@@ -0,0 +1,96 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author RenBoQing
+ * @date 2026年10月18日 23:58
+ * @Description lua/rate_limit.lua 的GCRA突发语义 使用内嵌redis
+ * burst为平均速率之外允许的突发请求数 同一时刻最多通过 burst+1 个请求
+ */
+class RateLimitScriptTest {
+    private static final DefaultRedisScript<Long> SCRIPT = new DefaultRedisScript<>();
+
+    static {
+        SCRIPT.setLocation(new ClassPathResource("lua/rate_limit.lua"));
+        SCRIPT.setResultType(Long.class);
+    }
+
+    private static RedisServer redisServer;
+    private static LettuceConnectionFactory connectionFactory;
+    private static StringRedisTemplate template;
+
+    @BeforeAll
+    static void start() throws IOException {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        redisServer = RedisServer.newRedisServer().bind("127.0.0.1").port(port).build();
+        redisServer.start();
+        connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration("127.0.0.1", port));
+        connectionFactory.afterPropertiesSet();
+        template = new StringRedisTemplate(connectionFactory);
+    }
+
+    @AfterAll
+    static void stop() throws IOException {
+        connectionFactory.destroy();
+        redisServer.stop();
+    }
+
+    @Test
+    void allowsBurstPlusOneAtOnce() {
+        long interval = TimeUnit.SECONDS.toMicros(1);
+        for (int i = 0; i < 4; i++) {
+            assertEquals(0L, acquire("burst", interval, 3), "第" + (i + 1) + "个请求");
+        }
+        long retry = acquire("burst", interval, 3);
+        assertTrue(retry > 0 && retry <= interval, "retry=" + retry);
+    }
+
+    @Test
+    void withoutBurstAllowsOnePerInterval() throws InterruptedException {
+        long interval = TimeUnit.MILLISECONDS.toMicros(500);
+        assertEquals(0L, acquire("steady", interval, 0));
+        assertTrue(acquire("steady", interval, 0) > 0);
+        Thread.sleep(600);
+        assertEquals(0L, acquire("steady", interval, 0));
+    }
+
+    //被拒绝的请求不消耗额度 等待返回的时长后即可通过
+    @Test
+    void rejectedRequestsDoNotConsume() throws InterruptedException {
+        long interval = TimeUnit.SECONDS.toMicros(1);
+        assertEquals(0L, acquire("rejected", interval, 0));
+        long retry = 0;
+        for (int i = 0; i < 5; i++) {
+            retry = acquire("rejected", interval, 0);
+            assertTrue(retry > 0, "retry=" + retry);
+        }
+        Thread.sleep(TimeUnit.MICROSECONDS.toMillis(retry) + 50);
+        assertEquals(0L, acquire("rejected", interval, 0));
+    }
+
+    private static long acquire(String key, long interval, long burst) {
+        Long retry = template.execute(SCRIPT, Collections.singletonList("rate:limit:test:" + key),
+                String.valueOf(interval), String.valueOf(interval * burst));
+        return retry == null ? -1 : retry;
+    }
+}
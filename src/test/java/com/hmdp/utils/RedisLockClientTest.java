@@ -0,0 +1,51 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author RenBoQing
+ * @date 2026年10月18日 23:59
+ * @Description 等待者登记 放弃等待的锁不会一直留在waiters中
+ */
+class RedisLockClientTest {
+
+    @Test
+    void sharesFutureUntilLastWaiterLeaves() {
+        RedisLockClient client = new RedisLockClient();
+        CompletableFuture<Void> first = client.registerWaiter("lock:test");
+        CompletableFuture<Void> second = client.registerWaiter("lock:test");
+        assertSame(first, second);
+        client.unregisterWaiter("lock:test", first);
+        assertTrue(waiters(client).containsKey("lock:test"));
+        client.unregisterWaiter("lock:test", second);
+        assertTrue(waiters(client).isEmpty());
+    }
+
+    //释放通知移除旧的future后 旧等待者离开不影响新的等待者
+    @Test
+    void staleUnregisterKeepsNewWaiters() {
+        RedisLockClient client = new RedisLockClient();
+        CompletableFuture<Void> stale = client.registerWaiter("lock:test");
+        waiters(client).remove("lock:test");
+        CompletableFuture<Void> current = client.registerWaiter("lock:test");
+        assertNotSame(stale, current);
+        client.unregisterWaiter("lock:test", stale);
+        assertTrue(waiters(client).containsKey("lock:test"));
+        client.unregisterWaiter("lock:test", current);
+        assertFalse(waiters(client).containsKey("lock:test"));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, ?> waiters(RedisLockClient client) {
+        return (Map<String, ?>) ReflectionTestUtils.getField(client, "waiters");
+    }
+}
@@ -0,0 +1,95 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * @author RenBoQing
+ * @date 2026年10月18日 23:59
+ * @Description lua/seckill_return.lua 归还借来的库存 使用内嵌redis
+ * 分片过期后归还不能重建只有库存的hash 否则该分片的资格判断在lua中出错
+ */
+class SeckillScriptTest {
+    private static final DefaultRedisScript<Long> SECKILL_SCRIPT = script("lua/seckill.lua");
+    private static final DefaultRedisScript<Long> LOAD_SCRIPT = script("lua/seckill_load.lua");
+    private static final DefaultRedisScript<Long> RETURN_SCRIPT = script("lua/seckill_return.lua");
+
+    private static RedisServer redisServer;
+    private static LettuceConnectionFactory connectionFactory;
+    private static StringRedisTemplate template;
+
+    private static DefaultRedisScript<Long> script(String path) {
+        DefaultRedisScript<Long> script = new DefaultRedisScript<>();
+        script.setLocation(new ClassPathResource(path));
+        script.setResultType(Long.class);
+        return script;
+    }
+
+    @BeforeAll
+    static void start() throws IOException {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        redisServer = RedisServer.newRedisServer().bind("127.0.0.1").port(port).build();
+        redisServer.start();
+        connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration("127.0.0.1", port));
+        connectionFactory.afterPropertiesSet();
+        template = new StringRedisTemplate(connectionFactory);
+    }
+
+    @AfterAll
+    static void stop() throws IOException {
+        connectionFactory.destroy();
+        redisServer.stop();
+    }
+
+    @Test
+    void returnsStockToLiveShard() {
+        String stockKey = "seckill:stock:test:live:{s0}";
+        load(stockKey, 0, TimeUnit.HOURS.toMillis(1));
+        assertEquals(1L, template.execute(RETURN_SCRIPT, Collections.singletonList(stockKey)));
+        assertEquals("1", template.opsForHash().get(stockKey, "stock"));
+        assertEquals(0L, admit(stockKey, "seckill:order:test:live:{s0}", "stream.orders:test:live:{s0}"));
+    }
+
+    //分片过期后归还 不写入 资格判断返回库存未加载
+    @Test
+    void skipsExpiredShard() throws InterruptedException {
+        String stockKey = "seckill:stock:test:expired:{s0}";
+        load(stockKey, 0, 100);
+        Thread.sleep(200);
+        assertEquals(0L, template.execute(RETURN_SCRIPT, Collections.singletonList(stockKey)));
+        assertFalse(template.hasKey(stockKey));
+        assertEquals(5L, admit(stockKey, "seckill:order:test:expired:{s0}", "stream.orders:test:expired:{s0}"));
+    }
+
+    private static void load(String stockKey, int stock, long ttlMillis) {
+        long now = System.currentTimeMillis();
+        template.execute(LOAD_SCRIPT, Collections.singletonList(stockKey), String.valueOf(stock),
+                String.valueOf(now - TimeUnit.MINUTES.toMillis(1)), String.valueOf(now + TimeUnit.HOURS.toMillis(1)),
+                String.valueOf(now + ttlMillis));
+    }
+
+    private static long admit(String stockKey, String orderKey, String stream) {
+        Long result = template.execute(SECKILL_SCRIPT, Arrays.asList(stockKey, orderKey, stream),
+                "1", String.valueOf(System.currentTimeMillis()), "1", "1", "0");
+        return result == null ? -1 : result;
+    }
+}
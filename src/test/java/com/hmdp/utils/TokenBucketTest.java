@@ -0,0 +1,42 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author RenBoQing
+ * @date 2026年10月18日 23:58
+ * @Description 进程内令牌桶
+ */
+class TokenBucketTest {
+
+    //初始为满桶 容量为一秒的令牌数
+    @Test
+    void startsFullWithOneSecondOfPermits() {
+        TokenBucket bucket = new TokenBucket(5);
+        for (int i = 0; i < 5; i++) {
+            assertTrue(bucket.tryAcquire());
+        }
+        assertFalse(bucket.tryAcquire());
+    }
+
+    @Test
+    void refillsOverTime() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(10);
+        while (bucket.tryAcquire()) {
+            //取空
+        }
+        Thread.sleep(250);
+        assertTrue(bucket.tryAcquire());
+    }
+
+    //每秒不足一个令牌时容量按一个计算
+    @Test
+    void capacityIsAtLeastOne() {
+        TokenBucket bucket = new TokenBucket(0.5);
+        assertTrue(bucket.tryAcquire());
+        assertFalse(bucket.tryAcquire());
+    }
+}